@@ -0,0 +1,212 @@
+package bench;
+
+import java.io.IOException;
+import java.util.*;
+
+import bgp.BGPRoute;
+import router.ASTopoParser;
+import router.BGPSpeaker;
+
+/**
+ * Builds the objects the benchmarks work on from a real topology, so paths
+ * have the lengths and ASNs a simulation of that topology would see. All
+ * randomness is seeded, the same topology always gives the same fixtures.
+ *
+ * @author pendgaft
+ *
+ */
+public class BenchFixtures {
+
+	public static final long FIXTURE_SEED = 42L;
+
+	/**
+	 * First destination ASN handed out for destinations that aren't in the
+	 * topology, well above any real ASN
+	 */
+	public static final int SYNTHETIC_DEST_BASE = 1000000000;
+
+	private static int nextSyntheticDest = BenchFixtures.SYNTHETIC_DEST_BASE;
+
+	/**
+	 * Builds the speakers for a topology, unseeded and wired up, the same way
+	 * ThunderWolf does.
+	 *
+	 * @param topoBase
+	 *            - the topology file base name, i.e. 5node
+	 * @return - the ASN to speaker map
+	 * @throws IOException
+	 *             - if the topology files can't be read
+	 */
+	public static HashMap<Integer, BGPSpeaker> loadTopology(String topoBase) throws IOException {
+		ASTopoParser topoParse = new ASTopoParser(topoBase + "-rel.txt", topoBase + "-ip.txt", true);
+		return topoParse.doNetworkBuild(0);
+	}
+
+	/**
+	 * Hands out a destination ASN no other fixture uses, so benchmarks
+	 * sharing a topology don't disturb each other's RIB entries.
+	 *
+	 * @return - a fresh destination ASN
+	 */
+	public static synchronized int syntheticDest() {
+		BenchFixtures.nextSyntheticDest++;
+		return BenchFixtures.nextSyntheticDest;
+	}
+
+	/**
+	 * Builds routes along shortest paths in the topology, between random
+	 * pairs of ASes, as they would sit in the source AS's RIB (first hop
+	 * first, the destination last).
+	 *
+	 * @param topo
+	 *            - the topology
+	 * @param count
+	 *            - the number of routes wanted
+	 * @param size
+	 *            - the number of CIDRs each route covers
+	 * @return - the routes, each with its own path
+	 */
+	public static List<BGPRoute> buildRoutes(HashMap<Integer, BGPSpeaker> topo, int count, int size) {
+		Random rng = new Random(BenchFixtures.FIXTURE_SEED);
+		List<Integer> asns = BenchFixtures.sortedASNs(topo);
+		List<BGPRoute> routes = new ArrayList<BGPRoute>(count);
+
+		/*
+		 * One BFS tree per destination serves many sources, use enough
+		 * destinations that the routes aren't all alike
+		 */
+		int destCount = Math.max(1, Math.min(asns.size(), count / 16));
+		while (routes.size() < count) {
+			int dest = asns.get(rng.nextInt(asns.size()));
+			HashMap<Integer, Integer> towardDest = BenchFixtures.bfsTree(topo, dest);
+			for (int counter = 0; counter < count / destCount + 1 && routes.size() < count; counter++) {
+				int src = asns.get(rng.nextInt(asns.size()));
+				if (src == dest || !towardDest.containsKey(src)) {
+					continue;
+				}
+				List<Integer> hops = new ArrayList<Integer>();
+				for (int tHop = towardDest.get(src); tHop != dest; tHop = towardDest.get(tHop)) {
+					hops.add(tHop);
+				}
+
+				BGPRoute tRoute = new BGPRoute(dest, size);
+				tRoute.appendASToPath(dest);
+				for (int hopCounter = hops.size() - 1; hopCounter >= 0; hopCounter--) {
+					tRoute.appendASToPath(hops.get(hopCounter));
+				}
+				routes.add(tRoute);
+			}
+		}
+		return routes;
+	}
+
+	/**
+	 * Builds a route with the given first hop and a path of the given length
+	 * to a destination, padded with random ASNs from the topology.
+	 *
+	 * @param topo
+	 *            - the topology
+	 * @param dest
+	 *            - the destination
+	 * @param firstHop
+	 *            - the AS the route is learned from
+	 * @param pathLength
+	 *            - the length of the path, counting the first hop and the
+	 *            destination, at least 2
+	 * @param rng
+	 *            - where the padding comes from
+	 * @return - the route
+	 */
+	public static BGPRoute buildRoute(HashMap<Integer, BGPSpeaker> topo, int dest, int firstHop, int pathLength,
+			Random rng) {
+		List<Integer> asns = BenchFixtures.sortedASNs(topo);
+		BGPRoute tRoute = new BGPRoute(dest, 1);
+		tRoute.appendASToPath(dest);
+		for (int counter = 2; counter < pathLength; counter++) {
+			tRoute.appendASToPath(asns.get(rng.nextInt(asns.size())));
+		}
+		tRoute.appendASToPath(firstHop);
+		return tRoute;
+	}
+
+	/**
+	 * Picks the speaker with the fewest peers that still has at least the
+	 * given number, ties going to the lowest ASN. Topologies too small to
+	 * have one give their best connected speaker instead.
+	 *
+	 * @param topo
+	 *            - the topology
+	 * @param minPeers
+	 *            - the number of peers wanted
+	 * @param needCustomer
+	 *            - if true only speakers with a customer are considered
+	 * @return - the speaker
+	 */
+	public static BGPSpeaker pickSpeaker(HashMap<Integer, BGPSpeaker> topo, int minPeers, boolean needCustomer) {
+		BGPSpeaker fit = null;
+		BGPSpeaker biggest = null;
+		for (int tASN : BenchFixtures.sortedASNs(topo)) {
+			BGPSpeaker tSpeaker = topo.get(tASN);
+			if (needCustomer && tSpeaker.getASObject().getCustomers().isEmpty()) {
+				continue;
+			}
+			int peerCount = tSpeaker.getASObject().getNeighbors().size();
+			if (biggest == null || peerCount > biggest.getASObject().getNeighbors().size()) {
+				biggest = tSpeaker;
+			}
+			if (peerCount >= minPeers && (fit == null || peerCount < fit.getASObject().getNeighbors().size())) {
+				fit = tSpeaker;
+			}
+		}
+		if (fit == null) {
+			return biggest;
+		}
+		return fit;
+	}
+
+	/**
+	 * Fetches a speaker's peers in ASN order, customers first.
+	 *
+	 * @param speaker
+	 *            - the speaker
+	 * @return - the ASNs of its peers
+	 */
+	public static List<Integer> orderedPeers(BGPSpeaker speaker) {
+		List<Integer> customers = new ArrayList<Integer>(speaker.getASObject().getCustomers());
+		Collections.sort(customers);
+		List<Integer> others = new ArrayList<Integer>(speaker.getASObject().getNeighbors());
+		others.removeAll(customers);
+		Collections.sort(others);
+		customers.addAll(others);
+		return customers;
+	}
+
+	private static List<Integer> sortedASNs(HashMap<Integer, BGPSpeaker> topo) {
+		List<Integer> asns = new ArrayList<Integer>(topo.keySet());
+		Collections.sort(asns);
+		return asns;
+	}
+
+	/**
+	 * BFS out from a destination, giving every reachable AS the neighbor
+	 * one hop closer to the destination.
+	 */
+	private static HashMap<Integer, Integer> bfsTree(HashMap<Integer, BGPSpeaker> topo, int dest) {
+		HashMap<Integer, Integer> towardDest = new HashMap<Integer, Integer>();
+		LinkedList<Integer> frontier = new LinkedList<Integer>();
+		towardDest.put(dest, dest);
+		frontier.add(dest);
+		while (!frontier.isEmpty()) {
+			int tASN = frontier.poll();
+			List<Integer> neighbors = new ArrayList<Integer>(topo.get(tASN).getASObject().getNeighbors());
+			Collections.sort(neighbors);
+			for (int tNeighbor : neighbors) {
+				if (!towardDest.containsKey(tNeighbor) && topo.containsKey(tNeighbor)) {
+					towardDest.put(tNeighbor, tASN);
+					frontier.add(tNeighbor);
+				}
+			}
+		}
+		return towardDest;
+	}
+}
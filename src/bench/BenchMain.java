@@ -0,0 +1,132 @@
+package bench;
+
+import java.io.*;
+import java.util.*;
+
+import router.BGPSpeaker;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.*;
+
+/**
+ * Runs the microbenchmarks of the BGP processing hot paths against one or
+ * more topologies, and reports the average time per operation of each, so a
+ * data structure change can be judged on numbers. Run it with the same JVM
+ * flags as the simulation, and on an otherwise idle machine.
+ *
+ * @author pendgaft
+ *
+ */
+public class BenchMain {
+
+	public static void main(String[] args) throws IOException {
+		ArgumentParser argParse = ArgumentParsers.newArgumentParser("BenchMain").description(
+				"Microbenchmarks of the BGP processing hot paths.");
+		argParse.addArgument("-t", "--topo").help("topo file base names to build fixtures from").nargs("+")
+				.setDefault(Arrays.asList("5node", "double-pruned-internet"));
+		argParse.addArgument("-b", "--bench").help("only run benchmarks whose name contains one of these")
+				.nargs("+");
+		argParse.addArgument("-w", "--warmup").help("warmup batches per benchmark").type(Integer.class).setDefault(5);
+		argParse.addArgument("-i", "--iterations").help("measured batches per benchmark").type(Integer.class)
+				.setDefault(10);
+		argParse.addArgument("--batchms").help("wall time of one batch in ms").type(Integer.class).setDefault(200);
+		argParse.addArgument("-o", "--out").help("also write the results to this CSV");
+
+		Namespace ns = null;
+		try {
+			ns = argParse.parseArgs(args);
+		} catch (ArgumentParserException e1) {
+			argParse.handleError(e1);
+			System.exit(-1);
+		}
+
+		List<String> wanted = ns.getList("bench");
+		BufferedWriter csvOut = null;
+		if (ns.getString("out") != null) {
+			csvOut = new BufferedWriter(new FileWriter(ns.getString("out")));
+			csvOut.write("topo,benchmark,param,nsPerOp,error,min,batchSize");
+			csvOut.newLine();
+		}
+
+		for (Object tTopo : ns.getList("topo")) {
+			String topoBase = (String) tTopo;
+			System.out.println("Building fixtures from " + topoBase);
+			HashMap<Integer, BGPSpeaker> topo = BenchFixtures.loadTopology(topoBase);
+			List<MicroBench> benches = new ArrayList<MicroBench>();
+			benches.addAll(RouteBenchmarks.build(topo));
+			benches.addAll(UpdateBenchmarks.build(topo));
+			benches.addAll(SpeakerBenchmarks.build(topo));
+
+			System.out.println(String.format("%-32s %-22s %12s %10s %12s", "Benchmark", "param", "ns/op", "error",
+					"min"));
+			for (MicroBench tBench : benches) {
+				if (!BenchMain.isWanted(tBench, wanted)) {
+					continue;
+				}
+				MicroBench.Result tResult = BenchMain.runBench(tBench, ns.getInt("warmup"), ns.getInt("iterations"),
+						ns.getInt("batchms") * 1000000L);
+				System.out.println(String.format("%-32s %-22s %12.1f %10.1f %12.1f", tBench.getName(), tBench
+						.getParam(), tResult.getMean(), tResult.getError(), tResult.getMin()));
+				if (csvOut != null) {
+					csvOut.write(topoBase + "," + tBench.getName() + ",\"" + tBench.getParam() + "\","
+							+ tResult.getMean() + "," + tResult.getError() + "," + tResult.getMin() + ","
+							+ tResult.getBatchSize());
+					csvOut.newLine();
+				}
+			}
+			System.out.println();
+		}
+
+		if (csvOut != null) {
+			csvOut.close();
+		}
+	}
+
+	private static boolean isWanted(MicroBench bench, List<String> wanted) {
+		if (wanted == null) {
+			return true;
+		}
+		for (Object tWanted : wanted) {
+			if (bench.getName().contains((String) tWanted)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Runs one benchmark. The batch size is doubled until a batch takes
+	 * batchNanos of wall time (untimed setup included, so benchmarks with
+	 * heavy setup still finish), then the warmup batches are run and
+	 * dropped, then each measured batch gives one sample.
+	 *
+	 * @param bench
+	 *            - the benchmark
+	 * @param warmups
+	 *            - batches to throw away
+	 * @param iterations
+	 *            - batches to measure
+	 * @param batchNanos
+	 *            - the wall time one batch should take
+	 * @return - the result
+	 */
+	public static MicroBench.Result runBench(MicroBench bench, int warmups, int iterations, long batchNanos) {
+		int batchSize = 1;
+		while (batchSize < (1 << 30)) {
+			long start = System.nanoTime();
+			bench.runBatch(batchSize);
+			if (System.nanoTime() - start >= batchNanos) {
+				break;
+			}
+			batchSize *= 2;
+		}
+
+		for (int counter = 0; counter < warmups; counter++) {
+			bench.runBatch(batchSize);
+		}
+		double[] samples = new double[iterations];
+		for (int counter = 0; counter < iterations; counter++) {
+			samples[counter] = (double) bench.runBatch(batchSize) / batchSize;
+		}
+		return new MicroBench.Result(bench, batchSize, samples);
+	}
+}
@@ -0,0 +1,135 @@
+package bench;
+
+import java.util.*;
+
+/**
+ * One microbenchmark, run by BenchMain.runBench in the same way JMH's average
+ * time mode runs one: the batch size is grown until a batch takes long enough
+ * to time, then a number of warmup batches are thrown away to let the JIT
+ * settle, then each measured batch gives one ns per op sample.
+ *
+ * A benchmark times its own batch, so it can do untimed setup between
+ * operations when the operation changes the state it works on. Anything an
+ * operation computes should be folded into sink so the JIT can't drop it.
+ *
+ * @author pendgaft
+ *
+ */
+public abstract class MicroBench {
+
+	private final String name;
+	private final String param;
+
+	/**
+	 * Where results go to keep them alive, read once per batch
+	 */
+	protected long sink;
+
+	/**
+	 * Builds a benchmark.
+	 *
+	 * @param name
+	 *            - what is being measured, i.e. BGPRoute.deepCopy
+	 * @param param
+	 *            - the parameter this instance was built for, i.e.
+	 *            candidates=16
+	 */
+	public MicroBench(String name, String param) {
+		this.name = name;
+		this.param = param;
+		this.sink = 0;
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public String getParam() {
+		return this.param;
+	}
+
+	/**
+	 * Runs a batch of operations.
+	 *
+	 * @param ops
+	 *            - the number of operations to run
+	 * @return - the nanoseconds spent in the operations themselves
+	 */
+	public abstract long runBatch(int ops);
+
+	/**
+	 * Helper that picks the next item of a fixture array, cycling through
+	 * it, so consecutive operations don't keep hitting the same objects.
+	 *
+	 * @param pos
+	 *            - the current position
+	 * @param length
+	 *            - the length of the array
+	 * @return - the next position
+	 */
+	protected static int nextPos(int pos, int length) {
+		pos++;
+		if (pos == length) {
+			return 0;
+		}
+		return pos;
+	}
+
+	/**
+	 * Result of running one benchmark, the mean over the measured batches
+	 * with the error at about 99.9% confidence as JMH reports it.
+	 */
+	public static class Result {
+
+		private final MicroBench bench;
+		private final int batchSize;
+		private final double[] samples;
+
+		public Result(MicroBench bench, int batchSize, double[] samples) {
+			this.bench = bench;
+			this.batchSize = batchSize;
+			this.samples = samples;
+		}
+
+		public MicroBench getBench() {
+			return this.bench;
+		}
+
+		public int getBatchSize() {
+			return this.batchSize;
+		}
+
+		public double getMean() {
+			double sum = 0.0;
+			for (double tSample : this.samples) {
+				sum += tSample;
+			}
+			return sum / this.samples.length;
+		}
+
+		/**
+		 * Fetches the half width of the confidence interval around the mean,
+		 * 3.29 standard errors.
+		 *
+		 * @return - the error, in ns per op
+		 */
+		public double getError() {
+			if (this.samples.length < 2) {
+				return Double.NaN;
+			}
+			double mean = this.getMean();
+			double squares = 0.0;
+			for (double tSample : this.samples) {
+				squares += (tSample - mean) * (tSample - mean);
+			}
+			double stdDev = Math.sqrt(squares / (this.samples.length - 1));
+			return 3.29 * stdDev / Math.sqrt(this.samples.length);
+		}
+
+		public double getMin() {
+			double[] sorted = this.samples.clone();
+			Arrays.sort(sorted);
+			return sorted[0];
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package bench;
+
+import java.util.*;
+
+import bgp.BGPRoute;
+import router.BGPSpeaker;
+
+/**
+ * Benchmarks of the BGPRoute operations every update and best path
+ * calculation leans on. Each works through a fixed set of routes along real
+ * paths in the topology.
+ *
+ * @author pendgaft
+ *
+ */
+public class RouteBenchmarks {
+
+	private static final int FIXTURE_ROUTES = 1024;
+
+	/**
+	 * Builds the route benchmarks for a topology.
+	 *
+	 * @param topo
+	 *            - the topology the routes' paths come from, only read
+	 * @return - the benchmarks
+	 */
+	public static List<MicroBench> build(HashMap<Integer, BGPSpeaker> topo) {
+		final BGPRoute[] routes = BenchFixtures.buildRoutes(topo, RouteBenchmarks.FIXTURE_ROUTES, 1).toArray(
+				new BGPRoute[0]);
+
+		/*
+		 * equals is tested against a copy, so the paths match and the whole
+		 * path is compared, the worst (and usual, for a re-advertisement)
+		 * case
+		 */
+		final BGPRoute[] copies = new BGPRoute[routes.length];
+		for (int counter = 0; counter < routes.length; counter++) {
+			copies[counter] = routes[counter].deepCopy();
+		}
+
+		List<MicroBench> benches = new ArrayList<MicroBench>();
+		benches.add(new MicroBench("BGPRoute.deepCopy", "") {
+			public long runBatch(int ops) {
+				int pos = 0;
+				long result = 0;
+				long start = System.nanoTime();
+				for (int counter = 0; counter < ops; counter++) {
+					result += routes[pos].deepCopy().getPathLength();
+					pos = MicroBench.nextPos(pos, routes.length);
+				}
+				long elapsed = System.nanoTime() - start;
+				this.sink += result;
+				return elapsed;
+			}
+		});
+		benches.add(new MicroBench("BGPRoute.equals", "samePath") {
+			public long runBatch(int ops) {
+				int pos = 0;
+				long result = 0;
+				long start = System.nanoTime();
+				for (int counter = 0; counter < ops; counter++) {
+					if (routes[pos].equals(copies[pos])) {
+						result++;
+					}
+					pos = MicroBench.nextPos(pos, routes.length);
+				}
+				long elapsed = System.nanoTime() - start;
+				this.sink += result;
+				return elapsed;
+			}
+		});
+		benches.add(new MicroBench("BGPRoute.hashCode", "") {
+			public long runBatch(int ops) {
+				int pos = 0;
+				long result = 0;
+				long start = System.nanoTime();
+				for (int counter = 0; counter < ops; counter++) {
+					result += routes[pos].hashCode();
+					pos = MicroBench.nextPos(pos, routes.length);
+				}
+				long elapsed = System.nanoTime() - start;
+				this.sink += result;
+				return elapsed;
+			}
+		});
+
+		/*
+		 * The loop check is done against our own ASN, which is almost never
+		 * in the path, so the whole path is walked
+		 */
+		benches.add(new MicroBench("BGPRoute.containsLoop", "noLoop") {
+			public long runBatch(int ops) {
+				int pos = 0;
+				long result = 0;
+				long start = System.nanoTime();
+				for (int counter = 0; counter < ops; counter++) {
+					if (routes[pos].containsLoop(BenchFixtures.SYNTHETIC_DEST_BASE)) {
+						result++;
+					}
+					pos = MicroBench.nextPos(pos, routes.length);
+				}
+				long elapsed = System.nanoTime() - start;
+				this.sink += result;
+				return elapsed;
+			}
+		});
+		return benches;
+	}
+}
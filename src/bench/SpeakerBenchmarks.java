@@ -0,0 +1,234 @@
+package bench;
+
+import java.util.*;
+
+import bgp.BGPRoute;
+import bgp.BGPUpdate;
+import router.BGPSpeaker;
+import router.BenchHook;
+
+/**
+ * Benchmarks of the BGPSpeaker work done per update and per MRAI expiration,
+ * the parts of the speaker that aren't public are driven through BenchHook.
+ * Each benchmark works on destinations that aren't in the topology, so they
+ * can share one set of speakers.
+ *
+ * @author pendgaft
+ *
+ */
+public class SpeakerBenchmarks {
+
+	private static final int[] CANDIDATE_COUNTS = { 1, 4, 16, 64 };
+	private static final int[] DIRTY_COUNTS = { 1, 16, 256, 4096 };
+
+	/**
+	 * Peers wanted by the speaker the MRAI is expired on, each dirty
+	 * destination is sent to every peer
+	 */
+	private static final int MRAI_PEERS = 8;
+
+	/**
+	 * Builds the speaker benchmarks for a topology.
+	 *
+	 * @param topo
+	 *            - the topology, the speakers' RIBs are modified
+	 * @return - the benchmarks
+	 */
+	public static List<MicroBench> build(HashMap<Integer, BGPSpeaker> topo) {
+		Random rng = new Random(BenchFixtures.FIXTURE_SEED);
+		List<MicroBench> benches = new ArrayList<MicroBench>();
+
+		for (int tCandidates : SpeakerBenchmarks.CANDIDATE_COUNTS) {
+			BGPSpeaker speaker = BenchFixtures.pickSpeaker(topo, tCandidates, false);
+			List<Integer> peers = BenchFixtures.orderedPeers(speaker);
+			if (peers.size() < tCandidates) {
+				System.out.println("Skipping " + tCandidates + " candidates, no speaker has that many peers.");
+				continue;
+			}
+			benches.add(SpeakerBenchmarks.buildPathSelectionBench(topo, speaker, peers, tCandidates, rng));
+			benches.add(SpeakerBenchmarks.buildHandleAdvertisementBench(topo, speaker, peers, tCandidates, rng));
+		}
+
+		BGPSpeaker mraiSpeaker = BenchFixtures.pickSpeaker(topo, SpeakerBenchmarks.MRAI_PEERS, true);
+		if (mraiSpeaker == null) {
+			System.out.println("Skipping mraiExpire, no speaker has a customer.");
+		} else {
+			for (int tDirty : SpeakerBenchmarks.DIRTY_COUNTS) {
+				benches.add(SpeakerBenchmarks.buildMRAIBench(topo, mraiSpeaker, tDirty, rng));
+				benches.add(SpeakerBenchmarks.buildMRAIHeldBench(topo, mraiSpeaker, tDirty, rng));
+			}
+		}
+		return benches;
+	}
+
+	private static MicroBench buildPathSelectionBench(HashMap<Integer, BGPSpeaker> topo,
+			final BGPSpeaker speaker, List<Integer> peers, int candidates, Random rng) {
+		int dest = BenchFixtures.syntheticDest();
+		final List<BGPRoute> possList = new ArrayList<BGPRoute>();
+		for (int counter = 0; counter < candidates; counter++) {
+			possList.add(SpeakerBenchmarks.buildLoopFreeRoute(topo, speaker, dest, peers.get(counter),
+					2 + rng.nextInt(5), rng));
+		}
+
+		return new MicroBench("BGPSpeaker.pathSelection", "candidates=" + candidates) {
+			public long runBatch(int ops) {
+				long result = 0;
+				long start = System.nanoTime();
+				for (int counter = 0; counter < ops; counter++) {
+					result += BenchHook.pathSelection(speaker, possList).getPathLength();
+				}
+				long elapsed = System.nanoTime() - start;
+				this.sink += result;
+				return elapsed;
+			}
+		};
+	}
+
+	/**
+	 * The update being handled flips the route from one peer between a
+	 * short and a long path, with the other candidates already installed,
+	 * so every operation is an implicit withdrawal, a best path
+	 * recalculation over all the candidates and a change of best path.
+	 */
+	private static MicroBench buildHandleAdvertisementBench(HashMap<Integer, BGPSpeaker> topo,
+			final BGPSpeaker speaker, List<Integer> peers, int candidates, Random rng) {
+		int dest = BenchFixtures.syntheticDest();
+		for (int counter = 1; counter < candidates; counter++) {
+			BenchHook.handleAdvertisement(speaker, BGPUpdate.buildAdvertisement(SpeakerBenchmarks
+					.buildLoopFreeRoute(topo, speaker, dest, peers.get(counter), 3 + rng.nextInt(4), rng)));
+		}
+		final BGPUpdate[] flips = new BGPUpdate[2];
+		flips[0] = BGPUpdate.buildAdvertisement(SpeakerBenchmarks.buildLoopFreeRoute(topo, speaker, dest, peers
+				.get(0), 2, rng));
+		flips[1] = BGPUpdate.buildAdvertisement(SpeakerBenchmarks.buildLoopFreeRoute(topo, speaker, dest, peers
+				.get(0), 8, rng));
+
+		return new MicroBench("BGPSpeaker.handleAdvertisement", "candidates=" + candidates) {
+			public long runBatch(int ops) {
+				int pos = 0;
+				long start = System.nanoTime();
+				for (int counter = 0; counter < ops; counter++) {
+					BenchHook.handleAdvertisement(speaker, flips[pos]);
+					pos = MicroBench.nextPos(pos, flips.length);
+				}
+				long elapsed = System.nanoTime() - start;
+				this.sink += speaker.calcTotalRouteCount();
+				return elapsed;
+			}
+		};
+	}
+
+	/**
+	 * Before each expiration the dirty destinations' routes, learned from a
+	 * customer so they go to every peer, are flipped to a new path, so the
+	 * expiration has a fresh advertisement to build and queue for each
+	 * destination and peer. The updates it queues are thrown away after it,
+	 * as if dropped unsent, so the peers never hold the flipped paths. Neither
+	 * is timed.
+	 */
+	private static MicroBench buildMRAIBench(HashMap<Integer, BGPSpeaker> topo, final BGPSpeaker speaker,
+			int dirtyCount, Random rng) {
+		final BGPUpdate[][] flips = SpeakerBenchmarks.buildMRAIFlips(topo, speaker, dirtyCount, rng);
+
+		return new MicroBench("BGPSpeaker.mraiExpire", "dirty=" + dirtyCount + ",peers="
+				+ speaker.getASObject().getNeighbors().size()) {
+			public long runBatch(int ops) {
+				int pos = 0;
+				long elapsed = 0;
+				for (int counter = 0; counter < ops; counter++) {
+					for (BGPUpdate tUpdate : flips[pos]) {
+						BenchHook.handleAdvertisement(speaker, tUpdate);
+					}
+					pos = MicroBench.nextPos(pos, flips.length);
+
+					long start = System.nanoTime();
+					speaker.mraiExpire();
+					elapsed += System.nanoTime() - start;
+
+					BenchHook.discardOutgoingUpdates(speaker, false);
+				}
+				this.sink += speaker.calcTotalRouteCount();
+				return elapsed;
+			}
+		};
+	}
+
+	/**
+	 * The peers are first given the short path for each destination. Before
+	 * each expiration the route is flipped to the long path and back again,
+	 * so every destination is dirty but the peers already hold the path the
+	 * expiration would advertise, and the Adj-RIB-Out suppresses it. Nothing
+	 * should be queued, anything that is gets thrown away untimed.
+	 */
+	private static MicroBench buildMRAIHeldBench(HashMap<Integer, BGPSpeaker> topo, final BGPSpeaker speaker,
+			int dirtyCount, Random rng) {
+		final BGPUpdate[][] flips = SpeakerBenchmarks.buildMRAIFlips(topo, speaker, dirtyCount, rng);
+		for (BGPUpdate tUpdate : flips[0]) {
+			BenchHook.handleAdvertisement(speaker, tUpdate);
+		}
+		speaker.mraiExpire();
+		BenchHook.discardOutgoingUpdates(speaker, true);
+
+		return new MicroBench("BGPSpeaker.mraiExpire", "dirty=" + dirtyCount + ",peers="
+				+ speaker.getASObject().getNeighbors().size() + ",held") {
+			public long runBatch(int ops) {
+				long elapsed = 0;
+				for (int counter = 0; counter < ops; counter++) {
+					for (BGPUpdate tUpdate : flips[1]) {
+						BenchHook.handleAdvertisement(speaker, tUpdate);
+					}
+					for (BGPUpdate tUpdate : flips[0]) {
+						BenchHook.handleAdvertisement(speaker, tUpdate);
+					}
+
+					long start = System.nanoTime();
+					speaker.mraiExpire();
+					elapsed += System.nanoTime() - start;
+
+					BenchHook.discardOutgoingUpdates(speaker, false);
+				}
+				this.sink += speaker.calcTotalRouteCount();
+				return elapsed;
+			}
+		};
+	}
+
+	/**
+	 * Builds two advertisements, a short and a long path, for each of a
+	 * number of fresh destinations, all learned from the speaker's first
+	 * customer.
+	 *
+	 * @return - the short paths' updates then the long paths', by destination
+	 */
+	private static BGPUpdate[][] buildMRAIFlips(HashMap<Integer, BGPSpeaker> topo, BGPSpeaker speaker,
+			int dirtyCount, Random rng) {
+		int customer = BenchFixtures.orderedPeers(speaker).get(0);
+		BGPUpdate[][] flips = new BGPUpdate[2][dirtyCount];
+		for (int counter = 0; counter < dirtyCount; counter++) {
+			int dest = BenchFixtures.syntheticDest();
+			for (int flipCounter = 0; flipCounter < flips.length; flipCounter++) {
+				flips[flipCounter][counter] = BGPUpdate.buildAdvertisement(SpeakerBenchmarks.buildLoopFreeRoute(
+						topo, speaker, dest, customer, 2 + flipCounter, rng));
+
+				/*
+				 * Finished updates aren't made parents of what we send, or
+				 * every expiration would grow their lists of children
+				 */
+				flips[flipCounter][counter].fakeFinishedInternalUpdate();
+			}
+		}
+		return flips;
+	}
+
+	/**
+	 * Builds a route the speaker won't discard as a loop.
+	 */
+	private static BGPRoute buildLoopFreeRoute(HashMap<Integer, BGPSpeaker> topo, BGPSpeaker speaker, int dest,
+			int firstHop, int pathLength, Random rng) {
+		BGPRoute tRoute = BenchFixtures.buildRoute(topo, dest, firstHop, pathLength, rng);
+		while (tRoute.containsLoop(speaker.getASN())) {
+			tRoute = BenchFixtures.buildRoute(topo, dest, firstHop, pathLength, rng);
+		}
+		return tRoute;
+	}
+}
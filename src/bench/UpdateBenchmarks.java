@@ -0,0 +1,103 @@
+package bench;
+
+import java.util.*;
+
+import bgp.BGPRoute;
+import bgp.BGPUpdate;
+import router.BGPSpeaker;
+
+/**
+ * Benchmarks of BGPUpdate.advanceUpdate, which walks the whole dependency
+ * tree under an update every time the update's queue is run forward. Chains
+ * are what a route change rippling away from its origin builds, the bushy
+ * tree is a busy speaker whose updates each fed several of its own.
+ *
+ * @author pendgaft
+ *
+ */
+public class UpdateBenchmarks {
+
+	/**
+	 * Updates big enough that none finish while being benchmarked, so every
+	 * run of the tree does the same work
+	 */
+	private static final int UPDATE_ROUTE_SIZE = 1 << 30;
+	private static final double ADVANCE_TIME = 0.001;
+
+	private static final int[] CHAIN_DEPTHS = { 16, 256, 2048 };
+	private static final int TREE_FANOUT = 4;
+	private static final int TREE_DEPTH = 6;
+
+	/**
+	 * Builds the update benchmarks for a topology.
+	 *
+	 * @param topo
+	 *            - the topology the updates' paths come from, only read
+	 * @return - the benchmarks
+	 */
+	public static List<MicroBench> build(HashMap<Integer, BGPSpeaker> topo) {
+		List<BGPRoute> routes = BenchFixtures.buildRoutes(topo, 256, UpdateBenchmarks.UPDATE_ROUTE_SIZE);
+
+		List<MicroBench> benches = new ArrayList<MicroBench>();
+		for (int tDepth : UpdateBenchmarks.CHAIN_DEPTHS) {
+			benches.add(UpdateBenchmarks.buildAdvanceBench("chain=" + tDepth, UpdateBenchmarks.buildTree(routes, 1,
+					tDepth)));
+		}
+		benches.add(UpdateBenchmarks.buildAdvanceBench("tree=" + UpdateBenchmarks.TREE_FANOUT + "x"
+				+ UpdateBenchmarks.TREE_DEPTH, UpdateBenchmarks.buildTree(routes, UpdateBenchmarks.TREE_FANOUT,
+				UpdateBenchmarks.TREE_DEPTH)));
+		return benches;
+	}
+
+	private static MicroBench buildAdvanceBench(String param, final BGPUpdate root) {
+		return new MicroBench("BGPUpdate.advanceUpdate", param) {
+			public long runBatch(int ops) {
+				long start = System.nanoTime();
+				for (int counter = 0; counter < ops; counter++) {
+					root.advanceUpdate(UpdateBenchmarks.ADVANCE_TIME);
+				}
+				long elapsed = System.nanoTime() - start;
+				this.sink += root.getDestCount();
+				return elapsed;
+			}
+		};
+	}
+
+	/**
+	 * Builds a dependency tree of processed, sending updates.
+	 *
+	 * @param routes
+	 *            - routes to build the updates from, reused round robin
+	 * @param fanout
+	 *            - children per update, 1 builds a chain
+	 * @param depth
+	 *            - levels in the tree, counting the root
+	 * @return - the root of the tree
+	 */
+	private static BGPUpdate buildTree(List<BGPRoute> routes, int fanout, int depth) {
+		int[] routePos = new int[1];
+		BGPUpdate root = UpdateBenchmarks.buildSendingUpdate(routes, routePos);
+		List<BGPUpdate> level = new ArrayList<BGPUpdate>();
+		level.add(root);
+		for (int levelCounter = 1; levelCounter < depth; levelCounter++) {
+			List<BGPUpdate> nextLevel = new ArrayList<BGPUpdate>();
+			for (BGPUpdate tParent : level) {
+				for (int counter = 0; counter < fanout; counter++) {
+					BGPUpdate tChild = UpdateBenchmarks.buildSendingUpdate(routes, routePos);
+					tChild.setParent(tParent);
+					nextLevel.add(tChild);
+				}
+			}
+			level = nextLevel;
+		}
+		return root;
+	}
+
+	private static BGPUpdate buildSendingUpdate(List<BGPRoute> routes, int[] routePos) {
+		BGPUpdate tUpdate = BGPUpdate.buildAdvertisement(routes.get(routePos[0]));
+		routePos[0] = (routePos[0] + 1) % routes.size();
+		tUpdate.markAsProcessed();
+		tUpdate.updateSendRate(1.0);
+		return tUpdate;
+	}
+}
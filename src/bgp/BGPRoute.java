@@ -11,6 +11,11 @@ import java.util.*;
 //XXX does the dest need to be a "random value" so we can support multiple networks per host?
 public class BGPRoute {
 
+	/*
+	 * HeapFootprint.ROUTE_SIZE counts these fields, update it when adding or
+	 * removing one
+	 */
+
 	/**
 	 * The ASN of the network family this route reaches, in theory this would be
 	 * a large number of CIDRs, for many different routes
@@ -28,7 +33,13 @@ public class BGPRoute {
 	 * at the AS that originates the route (it will be advertised out with
 	 * itself as part of the path, but internally it will have an empty path)
 	 */
-	private LinkedList<Integer> path;
+	private List<Integer> path;
+
+	/**
+	 * Set while the path is a shared read only template, the first append
+	 * swaps in a private copy
+	 */
+	private boolean sharedPath;
 
 	/**
 	 * Builds a new route object for the given destination
@@ -42,6 +53,28 @@ public class BGPRoute {
 		this.destASN = dest;
 		this.size = size;
 		this.path = new LinkedList<Integer>();
+		this.sharedPath = false;
+	}
+
+	/**
+	 * Builds a new route object whose path is a shared, read only template.
+	 * Seeders that install huge numbers of routes with the same path use this
+	 * so the path is only held in memory once. The template is never modified,
+	 * appending to the route first gives it its own copy of the path.
+	 * 
+	 * @param dest
+	 *            - the asn of the destination network
+	 * @param size
+	 *            - the number of CIDRs found behind that ASN
+	 * @param pathTemplate
+	 *            - the path, first hop first, which must not change after this
+	 *            call
+	 */
+	public BGPRoute(int dest, int size, List<Integer> pathTemplate) {
+		this.destASN = dest;
+		this.size = size;
+		this.path = pathTemplate;
+		this.sharedPath = true;
 	}
 
 	/**
@@ -51,9 +84,7 @@ public class BGPRoute {
 	 */
 	public BGPRoute deepCopy() {
 		BGPRoute newPath = new BGPRoute(this.destASN, this.size);
-		for (int counter = 0; counter < this.path.size(); counter++) {
-			newPath.path.addLast(this.path.get(counter));
-		}
+		newPath.path.addAll(this.path);
 		return newPath;
 	}
 
@@ -74,7 +105,11 @@ public class BGPRoute {
 	 *            - the ASN to be added to the front of the path
 	 */
 	public void appendASToPath(int frontASN) {
-		this.path.addFirst(frontASN);
+		if (this.sharedPath) {
+			this.path = new LinkedList<Integer>(this.path);
+			this.sharedPath = false;
+		}
+		this.path.add(0, frontASN);
 	}
 
 	/**
@@ -126,7 +161,7 @@ public class BGPRoute {
 			return myASN;
 		}
 
-		return this.path.getFirst();
+		return this.path.get(0);
 	}
 
 	/**
@@ -171,15 +206,10 @@ public class BGPRoute {
 		}
 
 		/*
-		 * Slow O(n) check for path equality
+		 * Slow O(n) check for path equality, by value, the hops are boxed and
+		 * the same ASN can be two different Integers
 		 */
-		for (int counter = 0; counter < this.path.size(); counter++) {
-			if (this.path.get(counter) != rhs.path.get(counter)) {
-				return false;
-			}
-		}
-
-		return true;
+		return this.path.equals(rhs.path);
 	}
 
 	//XXX update with string builder to save on memory/get speedup (hash code uses this...)?
@@ -7,11 +7,20 @@ import java.util.LinkedList;
  * Class that represents a BGP update message. In C this would be a struct that
  * contains a union based on if it is an explicit withdrawal or an advertisement
  * 
+ * Like real UPDATE messages, one update can carry a batch of destinations,
+ * either a set of withdrawn destinations or a set of routes that all share the
+ * same AS path (path attributes).
+ * 
  * @author pendgaft
  * 
  */
 public class BGPUpdate {
 
+	/*
+	 * HeapFootprint.UPDATE_SIZE counts the instance fields, update it when
+	 * adding or removing one
+	 */
+
 	/**
 	 * Boolean flag to tell if this is a route bearing update or if it is an
 	 * explicit withdrawal
@@ -19,10 +28,15 @@ public class BGPUpdate {
 	private boolean withdrawal;
 
 	/**
-	 * The "destination network" (see BGPRoute) that is being withdrawn
+	 * The "destination networks" (see BGPRoute) that are being withdrawn
 	 */
-	//TODO at some point it would be more realistic to pack multiple withdraws into one msg
-	private int withdrawalDest;
+	private int[] withdrawalDests;
+
+	/**
+	 * The number of CIDRs behind each withdrawn destination, needed so a
+	 * destination can be dropped from an unsent update
+	 */
+	private int[] withdrawalSizes;
 
 	/**
 	 * The peer that is sending the withdrawal, advertisements have the peer
@@ -31,9 +45,10 @@ public class BGPUpdate {
 	private int withrdawalSource;
 
 	/**
-	 * The Route being advertised if this is NOT an explicit withdrawal message
+	 * The routes being advertised if this is NOT an explicit withdrawal
+	 * message, all of these share the same path
 	 */
-	private BGPRoute advRoute;
+	private BGPRoute[] advRoutes;
 
 	private boolean bgpProcessed;
 	//TODO sendRate is a terrible named, please refactor
@@ -55,6 +70,18 @@ public class BGPUpdate {
 	 */
 	public static final double COMPLETE_THRESHOLD = 10e-3;
 
+	/**
+	 * Wire size model, in bytes. BGP header (19) plus the withdrawn routes
+	 * length and path attribute length fields (2 each), a /24 NLRI is 4 bytes,
+	 * the fixed attributes (ORIGIN, AS_PATH header, NEXT_HOP) are 17 bytes and
+	 * each ASN in the path is 4 bytes. Real BGP caps a message at 4096 bytes.
+	 */
+	public static final int MAX_WIRE_SIZE = 4096;
+	private static final int WITHDRAWAL_BASE_SIZE = 23;
+	private static final int ADVERTISEMENT_BASE_SIZE = 40;
+	private static final int PER_DEST_SIZE = 4;
+	private static final int PER_HOP_SIZE = 4;
+
 	/**
 	 * Static method to create an advertisement update, used when a viable path
 	 * still exists
@@ -65,7 +92,24 @@ public class BGPUpdate {
 	 * @return - the update object that represents this
 	 */
 	public static BGPUpdate buildAdvertisement(BGPRoute advRoute) {
-		return new BGPUpdate(advRoute);
+		BGPRoute[] routes = { advRoute };
+		return new BGPUpdate(routes);
+	}
+
+	/**
+	 * Static method to create an advertisement update carrying several
+	 * destinations. All of the routes MUST have the same path.
+	 * 
+	 * @param advRoutes
+	 *            - the routes being advertised
+	 * @return - the update object that represents this
+	 */
+	public static BGPUpdate buildAdvertisement(List<BGPRoute> advRoutes) {
+		if (advRoutes.isEmpty()) {
+			throw new BGPException("Attempted to build an advertisement with no routes!");
+		}
+
+		return new BGPUpdate(advRoutes.toArray(new BGPRoute[advRoutes.size()]));
 	}
 
 	/**
@@ -78,20 +122,73 @@ public class BGPUpdate {
 	 * @return - the update object that represents this
 	 */
 	public static BGPUpdate buildWithdrawal(int withDest, int updateSrc, int size) {
-		return new BGPUpdate(withDest, updateSrc, size);
+		int[] dests = { withDest };
+		int[] sizes = { size };
+		return new BGPUpdate(dests, sizes, updateSrc);
+	}
+
+	/**
+	 * Static method to create an explicit withdrawal update covering several
+	 * destinations.
+	 * 
+	 * @param withDests
+	 *            - the destination ASes that we no longer have routes to
+	 * @param destSizes
+	 *            - the number of CIDRs behind each destination
+	 * @param updateSrc
+	 *            - our (the withdrawaler)'s ASN
+	 * @return - the update object that represents this
+	 */
+	public static BGPUpdate buildWithdrawal(List<Integer> withDests, List<Integer> destSizes, int updateSrc) {
+		if (withDests.isEmpty() || withDests.size() != destSizes.size()) {
+			throw new BGPException("Attempted to build a withdrawal with bad destination list!");
+		}
+
+		int[] dests = new int[withDests.size()];
+		int[] sizes = new int[withDests.size()];
+		for (int counter = 0; counter < dests.length; counter++) {
+			dests[counter] = withDests.get(counter);
+			sizes[counter] = destSizes.get(counter);
+		}
+		return new BGPUpdate(dests, sizes, updateSrc);
+	}
+
+	/**
+	 * Computes how many destinations a single update can carry before it
+	 * would overrun the maximum BGP message size.
+	 * 
+	 * @param withdrawal
+	 *            - true if the update is an explicit withdrawal
+	 * @param pathLength
+	 *            - the length of the shared path, ignored for withdrawals
+	 * @return - the maximum number of destinations to pack into one update
+	 */
+	public static int maxDestsPerUpdate(boolean withdrawal, int pathLength) {
+		int baseSize;
+		if (withdrawal) {
+			baseSize = BGPUpdate.WITHDRAWAL_BASE_SIZE;
+		} else {
+			baseSize = BGPUpdate.ADVERTISEMENT_BASE_SIZE + pathLength * BGPUpdate.PER_HOP_SIZE;
+		}
+
+		return Math.max(1, (BGPUpdate.MAX_WIRE_SIZE - baseSize) / BGPUpdate.PER_DEST_SIZE);
 	}
 
 	/**
 	 * Constructor used to build an advertisement message.
 	 * 
-	 * @param path
-	 *            - the path we're advertising
+	 * @param routes
+	 *            - the routes we're advertising, all sharing one path
 	 */
-	private BGPUpdate(BGPRoute path) {
-		this.advRoute = path;
+	private BGPUpdate(BGPRoute[] routes) {
+		this.advRoutes = routes;
 		this.withdrawal = false;
 
-		this.totalSize = (double) path.getSize();
+		int size = 0;
+		for (BGPRoute tRoute : routes) {
+			size += tRoute.getSize();
+		}
+		this.totalSize = (double) size;
 		this.availToSendSize = this.totalSize;
 		this.completedSize = 0.0;
 
@@ -105,14 +202,20 @@ public class BGPUpdate {
 	/**
 	 * Constructor used to build a withdrawal update message.
 	 * 
-	 * @param withdrawalDest
+	 * @param withdrawalDests
+	 * @param withdrawalSizes
 	 * @param updateSrc
 	 */
-	private BGPUpdate(int withdrawalDest, int updateSrc, int size) {
-		this.withdrawalDest = withdrawalDest;
+	private BGPUpdate(int[] withdrawalDests, int[] withdrawalSizes, int updateSrc) {
+		this.withdrawalDests = withdrawalDests;
+		this.withdrawalSizes = withdrawalSizes;
 		this.withrdawalSource = updateSrc;
 		this.withdrawal = true;
 
+		int size = 0;
+		for (int tSize : withdrawalSizes) {
+			size += tSize;
+		}
 		this.totalSize = (double) size;
 		this.availToSendSize = this.totalSize;
 		this.completedSize = 0.0;
@@ -135,12 +238,42 @@ public class BGPUpdate {
 	}
 
 	/**
-	 * Fetches the route being advertised. This functions so long as this is not
-	 * an explicit withdrawal message.
+	 * Fetches the number of destinations carried in this update, either
+	 * withdrawn or advertised.
 	 * 
+	 * @return - the number of destinations in the update
+	 */
+	public int getDestCount() {
+		if (this.isWithdrawal()) {
+			return this.withdrawalDests.length;
+		}
+		return this.advRoutes.length;
+	}
+
+	/**
+	 * Fetches one of the destinations carried in this update, works for both
+	 * withdrawals and advertisements.
+	 * 
+	 * @param index
+	 *            - which destination, 0 to getDestCount() - 1
+	 * @return - the ASN of the destination network
+	 */
+	public int getDest(int index) {
+		if (this.isWithdrawal()) {
+			return this.withdrawalDests[index];
+		}
+		return this.advRoutes[index].getDest();
+	}
+
+	/**
+	 * Fetches one of the routes being advertised. This functions so long as
+	 * this is not an explicit withdrawal message.
+	 * 
+	 * @param index
+	 *            - which route, 0 to getDestCount() - 1
 	 * @return - the BGP route being advertised
 	 */
-	public BGPRoute getAdvertisedRoute() {
+	public BGPRoute getAdvertisedRoute(int index) {
 		/*
 		 * Sanity check that this isn't an explicit withdrawal message
 		 */
@@ -148,15 +281,18 @@ public class BGPUpdate {
 			throw new BGPException("Attempted to fetch path from explcit withdrawal!");
 		}
 
-		return this.advRoute;
+		return this.advRoutes[index];
 	}
 
 	/**
-	 * Fetches the destination that the update is reporting a loss of route to.
+	 * Fetches one of the destinations that the update is reporting a loss of
+	 * route to.
 	 * 
+	 * @param index
+	 *            - which destination, 0 to getDestCount() - 1
 	 * @return - the ASN of the networks we lost all routes to
 	 */
-	public int getWithdrawnDest() {
+	public int getWithdrawnDest(int index) {
 		/*
 		 * Sanity check that this isn't an advertisement message
 		 */
@@ -164,7 +300,7 @@ public class BGPUpdate {
 			throw new BGPException("Attempted to fetch withdrawal dest from an advertisement bearing update!");
 		}
 
-		return this.withdrawalDest;
+		return this.withdrawalDests[index];
 	}
 
 	/**
@@ -185,6 +321,72 @@ public class BGPUpdate {
 		return this.withrdawalSource;
 	}
 
+	/**
+	 * Predicate to test if the receiver has started on this update, either
+	 * doing BGP processing on it or receiving any of its state.
+	 * 
+	 * @return - true if the update is at or was at the head of the receiver's
+	 *         queue, false if it is still waiting in the queue untouched
+	 */
+	public boolean hasStarted() {
+		return this.bgpProcessed || this.completedSize > 0.0;
+	}
+
+	/**
+	 * Removes a destination from an update that has not been started, used
+	 * when a newer update for the same destination supersedes it. If this
+	 * empties the update, it is also cut loose from its parent, and the caller
+	 * should pull it from the queue.
+	 * 
+	 * @param dest
+	 *            - the destination to drop
+	 * @return - true if the destination was found and dropped
+	 */
+	public boolean dropDest(int dest) {
+		if (this.hasStarted()) {
+			throw new BGPException("Attempted to drop a destination from an update already in progress!");
+		}
+
+		int pos = -1;
+		for (int counter = 0; counter < this.getDestCount(); counter++) {
+			if (this.getDest(counter) == dest) {
+				pos = counter;
+				break;
+			}
+		}
+		if (pos == -1) {
+			return false;
+		}
+
+		int droppedSize;
+		if (this.isWithdrawal()) {
+			droppedSize = this.withdrawalSizes[pos];
+			this.withdrawalDests = BGPUpdate.cutSlot(this.withdrawalDests, pos);
+			this.withdrawalSizes = BGPUpdate.cutSlot(this.withdrawalSizes, pos);
+		} else {
+			droppedSize = this.advRoutes[pos].getSize();
+			BGPRoute[] newRoutes = new BGPRoute[this.advRoutes.length - 1];
+			System.arraycopy(this.advRoutes, 0, newRoutes, 0, pos);
+			System.arraycopy(this.advRoutes, pos + 1, newRoutes, pos, newRoutes.length - pos);
+			this.advRoutes = newRoutes;
+		}
+
+		this.totalSize -= droppedSize;
+		this.availToSendSize = Math.min(this.availToSendSize, this.totalSize);
+		if (this.getDestCount() == 0 && this.parentUpdate != null) {
+			this.parentUpdate.childUpdates.remove(this);
+			this.parentUpdate = null;
+		}
+		return true;
+	}
+
+	private static int[] cutSlot(int[] values, int pos) {
+		int[] newValues = new int[values.length - 1];
+		System.arraycopy(values, 0, newValues, 0, pos);
+		System.arraycopy(values, pos + 1, newValues, pos, newValues.length - pos);
+		return newValues;
+	}
+
 	public void updateSendRate(double newSendRate) {
 		if (!this.bgpProcessed) {
 			throw new RuntimeException("Can't set a send rate when we've not bgp processed!");
@@ -314,6 +516,18 @@ public class BGPUpdate {
 		this.childUpdates.add(child);
 	}
 
+	/**
+	 * Fetches the number of updates that depend on this one.
+	 * 
+	 * @return - the number of children
+	 */
+	public int getChildCount() {
+		if (this.childUpdates == null) {
+			return 0;
+		}
+		return this.childUpdates.size();
+	}
+
 	public void orphanChildren() {
 		if (this.childUpdates != null) {
 			for (BGPUpdate tChild : this.childUpdates) {
@@ -323,19 +537,19 @@ public class BGPUpdate {
 	}
 
 	/**
-	 * Computes the size this update will take up when in I/O buffers. Currently
-	 * this does NOT add on packet headers. I _think_ that is an ok assumption,
-	 * as in general updates get packed as tightly as they can and the header
-	 * overhead should only be about 4%.
+	 * Computes the size this update will take up when in I/O buffers. The
+	 * header and path attributes are paid once per update, each packed
+	 * destination only adds its NLRI. Does NOT add on TCP/IP headers.
 	 * 
 	 * @return the size of the update in bytes when in an I/O buffer or on the
 	 *         wire
 	 */
 	public long getWireSize() {
 		if (this.isWithdrawal()) {
-			return 27;
+			return BGPUpdate.WITHDRAWAL_BASE_SIZE + this.withdrawalDests.length * BGPUpdate.PER_DEST_SIZE;
 		} else {
-			return 44 + this.getAdvertisedRoute().getPathLength() * 4;
+			return BGPUpdate.ADVERTISEMENT_BASE_SIZE + this.advRoutes[0].getPathLength() * BGPUpdate.PER_HOP_SIZE
+					+ this.advRoutes.length * BGPUpdate.PER_DEST_SIZE;
 		}
 	}
 
@@ -0,0 +1,142 @@
+package bgp;
+
+import java.util.*;
+
+/**
+ * Collects the route changes a speaker owes one peer at MRAI expiration and
+ * packs them into as few update messages as possible. Advertisements are
+ * grouped by the path they carry, withdrawals are grouped together, and in
+ * both cases only changes that depend on the same parent update (see
+ * BGPUpdate's dependency graph) are packed together, so the dependency graph
+ * stays a tree.
+ *
+ * @author pendgaft
+ *
+ */
+public class UpdatePacker {
+
+	private int myASN;
+
+	/*
+	 * BGPUpdate has identity hashing, so these are linked maps, otherwise the
+	 * order updates go out in (and so the sim's results) would hang on
+	 * identity hash codes
+	 */
+	private LinkedHashMap<BGPUpdate, LinkedHashMap<List<Integer>, List<BGPRoute>>> pendingAdvs;
+	private LinkedHashMap<BGPUpdate, List<Integer>> pendingWithdrawals;
+	private LinkedHashMap<BGPUpdate, List<Integer>> pendingWithdrawalSizes;
+
+	/**
+	 * Builds an empty packer.
+	 *
+	 * @param myASN
+	 *            - the ASN of the speaker sending the updates
+	 */
+	public UpdatePacker(int myASN) {
+		this.myASN = myASN;
+		this.pendingAdvs = new LinkedHashMap<BGPUpdate, LinkedHashMap<List<Integer>, List<BGPRoute>>>();
+		this.pendingWithdrawals = new LinkedHashMap<BGPUpdate, List<Integer>>();
+		this.pendingWithdrawalSizes = new LinkedHashMap<BGPUpdate, List<Integer>>();
+	}
+
+	/**
+	 * Queues a route to be advertised.
+	 *
+	 * @param advRoute
+	 *            - the route to advertise, already including our ASN
+	 * @param parent
+	 *            - the update this advertisement depends on, null if none
+	 */
+	public void addAdvertisement(BGPRoute advRoute, BGPUpdate parent) {
+		parent = UpdatePacker.liveParent(parent);
+
+		LinkedHashMap<List<Integer>, List<BGPRoute>> byPath = this.pendingAdvs.get(parent);
+		if (byPath == null) {
+			byPath = new LinkedHashMap<List<Integer>, List<BGPRoute>>();
+			this.pendingAdvs.put(parent, byPath);
+		}
+
+		List<BGPRoute> routes = byPath.get(advRoute.fetchRawPath());
+		if (routes == null) {
+			routes = new ArrayList<BGPRoute>();
+			byPath.put(advRoute.fetchRawPath(), routes);
+		}
+		routes.add(advRoute);
+	}
+
+	/**
+	 * Queues a destination to be explicitly withdrawn.
+	 *
+	 * @param dest
+	 *            - the destination we no longer have a route to
+	 * @param size
+	 *            - the number of CIDRs behind the destination
+	 * @param parent
+	 *            - the update this withdrawal depends on, null if none
+	 */
+	public void addWithdrawal(int dest, int size, BGPUpdate parent) {
+		parent = UpdatePacker.liveParent(parent);
+
+		List<Integer> dests = this.pendingWithdrawals.get(parent);
+		if (dests == null) {
+			dests = new ArrayList<Integer>();
+			this.pendingWithdrawals.put(parent, dests);
+			this.pendingWithdrawalSizes.put(parent, new ArrayList<Integer>());
+		}
+		dests.add(dest);
+		this.pendingWithdrawalSizes.get(parent).add(size);
+	}
+
+	/**
+	 * Builds the packed updates for everything queued so far, with their
+	 * parents set, and resets the packer. Withdrawals come first, as a real
+	 * speaker would put them at the front of the message.
+	 *
+	 * @return - the updates to place on the peer's queue, in order
+	 */
+	public List<BGPUpdate> buildUpdates() {
+		List<BGPUpdate> retList = new ArrayList<BGPUpdate>();
+
+		int maxWithdrawals = BGPUpdate.maxDestsPerUpdate(true, 0);
+		for (BGPUpdate tParent : this.pendingWithdrawals.keySet()) {
+			List<Integer> dests = this.pendingWithdrawals.get(tParent);
+			List<Integer> sizes = this.pendingWithdrawalSizes.get(tParent);
+			for (int start = 0; start < dests.size(); start += maxWithdrawals) {
+				int end = Math.min(start + maxWithdrawals, dests.size());
+				BGPUpdate outUpdate = BGPUpdate.buildWithdrawal(dests.subList(start, end), sizes.subList(start, end),
+						this.myASN);
+				outUpdate.setParent(tParent);
+				retList.add(outUpdate);
+			}
+		}
+
+		for (BGPUpdate tParent : this.pendingAdvs.keySet()) {
+			for (List<BGPRoute> tRoutes : this.pendingAdvs.get(tParent).values()) {
+				int maxAdvs = BGPUpdate.maxDestsPerUpdate(false, tRoutes.get(0).getPathLength());
+				for (int start = 0; start < tRoutes.size(); start += maxAdvs) {
+					BGPUpdate outUpdate = BGPUpdate.buildAdvertisement(tRoutes.subList(start,
+							Math.min(start + maxAdvs, tRoutes.size())));
+					outUpdate.setParent(tParent);
+					retList.add(outUpdate);
+				}
+			}
+		}
+
+		this.pendingAdvs.clear();
+		this.pendingWithdrawals.clear();
+		this.pendingWithdrawalSizes.clear();
+		return retList;
+	}
+
+	/**
+	 * Collapses parents that have already finished to null, setParent would do
+	 * the same, and doing it up front lets those changes pack with the other
+	 * dependency roots.
+	 */
+	private static BGPUpdate liveParent(BGPUpdate parent) {
+		if (parent != null && parent.finished()) {
+			return null;
+		}
+		return parent;
+	}
+}
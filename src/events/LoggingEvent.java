@@ -21,7 +21,8 @@ public class LoggingEvent extends SimEvent {
 	}
 
 	public SimEvent repopulate() {
-		return new LoggingEvent(this.getEventTime() + SimLogger.LOG_EPOCH);
+		this.setEventTime(this.getEventTime() + SimLogger.LOG_EPOCH);
+		return this;
 	}
 
 }
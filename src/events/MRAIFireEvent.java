@@ -1,6 +1,7 @@
 package events;
 
 import router.BGPSpeaker;
+import router.SpeakerCounters;
 import logging.SimLogger;
 
 public class MRAIFireEvent extends SimEvent{
@@ -10,10 +11,13 @@ public class MRAIFireEvent extends SimEvent{
 	}
 
 	public void handleEvent(SimLogger theLogger) {
+		long costStart = this.getOwner().costClock();
 		this.getOwner().mraiExpire();
+		this.getOwner().chargeCost(SpeakerCounters.MRAI, costStart);
 	}
 	
 	public SimEvent repopulate(){
-		return this.getOwner().getNextMRAI();
+		this.setEventTime(this.getOwner().getNextMRAITime());
+		return this;
 	}
 }
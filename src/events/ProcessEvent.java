@@ -1,7 +1,9 @@
 package events;
 
 import router.BGPSpeaker;
+import router.SpeakerCounters;
 import logging.SimLogger;
+import profiling.ProcessCompleteEvent;
 
 public class ProcessEvent extends SimEvent {
 	
@@ -14,8 +16,20 @@ public class ProcessEvent extends SimEvent {
 		//NO EVENT SPECIFIC TASKS
 	}
 	
+	/**
+	 * Process events are owned by their router and reused for the whole
+	 * simulation, so rather than building a new event we simply move this one
+	 * to the router's next completion time.
+	 */
 	public SimEvent repopulate(){
-		this.getOwner().handleProcessingEventCompleted(super.getEventTime());
-		return this.getOwner().getNextProcessEvent();
+		ProcessCompleteEvent jfrEvent = new ProcessCompleteEvent();
+		jfrEvent.begin();
+		long costStart = this.getOwner().costClock();
+		double completedTime = super.getEventTime();
+		this.getOwner().handleProcessingEventCompleted(completedTime);
+		this.setEventTime(this.getOwner().getNextProcessTime());
+		this.getOwner().chargeCost(SpeakerCounters.PROCESS_DONE, costStart);
+		jfrEvent.finish(this.getOwner().getASN(), this.getOwner().getWorkRemaining(), completedTime);
+		return this;
 	}
 }
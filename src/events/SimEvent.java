@@ -11,6 +11,12 @@ public abstract class SimEvent implements Comparable<SimEvent> {
 
 	private BGPSpeaker myOwner;
 
+	/**
+	 * Slot this event currently occupies in a SimEventQueue, -1 if it is not
+	 * queued
+	 */
+	private int heapIndex;
+
 	public static final int ROUTER_PROCESS = 1;
 	public static final int MRAI_EVENT = 2;
 	public static final int LOGGING_EVENT = 3;
@@ -25,6 +31,7 @@ public abstract class SimEvent implements Comparable<SimEvent> {
 		this.eventTime = eTime;
 		this.eventType = eType;
 		this.myOwner = owner;
+		this.heapIndex = -1;
 	}
 
 	public abstract void handleEvent(SimLogger theLogger);
@@ -35,6 +42,25 @@ public abstract class SimEvent implements Comparable<SimEvent> {
 		return this.eventTime;
 	}
 
+	/**
+	 * Moves the event to a new time. This must only be done while the event is
+	 * not queued, or by the SimEventQueue itself, as it changes the heap key.
+	 * 
+	 * @param eTime
+	 *            - the new simulated time of the event
+	 */
+	void setEventTime(double eTime) {
+		this.eventTime = eTime;
+	}
+
+	int getHeapIndex() {
+		return this.heapIndex;
+	}
+
+	void setHeapIndex(int index) {
+		this.heapIndex = index;
+	}
+
 	public int getEventType() {
 		return this.eventType;
 	}
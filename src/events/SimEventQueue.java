@@ -0,0 +1,213 @@
+package events;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of simulation events ordered by event time. Unlike a
+ * PriorityQueue, every event tracks its own slot in the heap, so an event that
+ * is already queued can be moved to a new time in O(log n) without being
+ * removed, re-allocated, and re-added. This lets each router own exactly one
+ * process event and one MRAI event for the whole simulation.
+ *
+ * All public methods are synchronized, worker threads reschedule their
+ * routers' process events concurrently.
+ *
+ * @author pendgaft
+ *
+ */
+public class SimEventQueue {
+
+	private SimEvent[] heap;
+	private int size;
+
+	private static final int DEFAULT_CAPACITY = 64;
+
+	public SimEventQueue() {
+		this(SimEventQueue.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Builds an empty event queue.
+	 *
+	 * @param initialCapacity
+	 *            - the number of events we expect to hold, normally two per
+	 *            router plus the logging event
+	 */
+	public SimEventQueue(int initialCapacity) {
+		this.heap = new SimEvent[Math.max(initialCapacity, 1)];
+		this.size = 0;
+	}
+
+	/**
+	 * Adds an event to the queue. Adding an event that is already queued is an
+	 * error, use reschedule to move it instead.
+	 *
+	 * @param event
+	 *            - the event to add
+	 */
+	public synchronized void put(SimEvent event) {
+		if (event.getHeapIndex() != -1) {
+			throw new IllegalStateException("Event already queued: " + event.toString());
+		}
+
+		if (this.size == this.heap.length) {
+			this.heap = Arrays.copyOf(this.heap, this.heap.length * 2);
+		}
+		this.heap[this.size] = event;
+		event.setHeapIndex(this.size);
+		this.size++;
+		this.siftUp(this.size - 1);
+	}
+
+	/**
+	 * Removes and returns the soonest event in the queue.
+	 *
+	 * @return - the event with the smallest event time, null if the queue is
+	 *         empty
+	 */
+	public synchronized SimEvent poll() {
+		if (this.size == 0) {
+			return null;
+		}
+
+		SimEvent head = this.heap[0];
+		this.removeAt(0);
+		return head;
+	}
+
+	/**
+	 * Moves an event to a new time. If the event is currently queued it is
+	 * re-sifted in place, otherwise only its time is updated and it is left for
+	 * the caller to put back in the queue.
+	 *
+	 * @param event
+	 *            - the event to move
+	 * @param newTime
+	 *            - the simulated time the event should now fire at
+	 */
+	public synchronized void reschedule(SimEvent event, double newTime) {
+		double oldTime = event.getEventTime();
+		event.setEventTime(newTime);
+
+		int pos = event.getHeapIndex();
+		if (pos == -1) {
+			return;
+		}
+
+		if (newTime < oldTime) {
+			this.siftUp(pos);
+		} else if (newTime > oldTime) {
+			this.siftDown(pos);
+		}
+	}
+
+	/**
+	 * Removes an event from the queue if it is present.
+	 *
+	 * @param event
+	 *            - the event to remove
+	 * @return - true if the event was queued and has been removed, false
+	 *         otherwise
+	 */
+	public synchronized boolean remove(SimEvent event) {
+		int pos = event.getHeapIndex();
+		if (pos == -1) {
+			return false;
+		}
+
+		this.removeAt(pos);
+		return true;
+	}
+
+	/**
+	 * Counts the queued events due before a time. Idle routers park their
+	 * process event at the end of time, so this is how many events are
+	 * actually live, where size() is always about two per router. This walks
+	 * the whole heap.
+	 *
+	 * @param time
+	 *            - the simulated time in question
+	 * @return - the number of queued events with an earlier event time
+	 */
+	public synchronized int countBefore(double time) {
+		int count = 0;
+		for (int counter = 0; counter < this.size; counter++) {
+			if (this.heap[counter].getEventTime() < time) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public synchronized int size() {
+		return this.size;
+	}
+
+	public synchronized boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	private void removeAt(int pos) {
+		SimEvent removed = this.heap[pos];
+		removed.setHeapIndex(-1);
+		this.size--;
+
+		/*
+		 * If we removed the tail we're done, otherwise move the tail into the
+		 * hole and fix up the heap in whichever direction it needs to go
+		 */
+		if (pos == this.size) {
+			this.heap[pos] = null;
+			return;
+		}
+
+		SimEvent moved = this.heap[this.size];
+		this.heap[this.size] = null;
+		this.heap[pos] = moved;
+		moved.setHeapIndex(pos);
+		this.siftDown(pos);
+		if (this.heap[pos] == moved) {
+			this.siftUp(pos);
+		}
+	}
+
+	private void siftUp(int pos) {
+		SimEvent event = this.heap[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			SimEvent parentEvent = this.heap[parent];
+			if (event.compareTo(parentEvent) >= 0) {
+				break;
+			}
+
+			this.heap[pos] = parentEvent;
+			parentEvent.setHeapIndex(pos);
+			pos = parent;
+		}
+
+		this.heap[pos] = event;
+		event.setHeapIndex(pos);
+	}
+
+	private void siftDown(int pos) {
+		SimEvent event = this.heap[pos];
+		int half = this.size >>> 1;
+		while (pos < half) {
+			int child = (pos << 1) + 1;
+			int right = child + 1;
+			if (right < this.size && this.heap[right].compareTo(this.heap[child]) < 0) {
+				child = right;
+			}
+			if (event.compareTo(this.heap[child]) <= 0) {
+				break;
+			}
+
+			this.heap[pos] = this.heap[child];
+			this.heap[pos].setHeapIndex(pos);
+			pos = child;
+		}
+
+		this.heap[pos] = event;
+		event.setHeapIndex(pos);
+	}
+}
@@ -0,0 +1,147 @@
+package logging;
+
+import java.io.*;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compact binary stat log. A fixed header carries the stat name, the scale
+ * factor the CSV form would apply, and the ASN of every column, then each
+ * epoch is a block of the time followed by one raw value per AS in header
+ * order. Values are written as zigzag varints, most counters are small so
+ * this takes a byte or three rather than eight. Optionally the whole stream
+ * is GZIP compressed. StatLogReader turns these back into CSV.
+ *
+ * Layout, all values big endian:
+ *
+ * <pre>
+ * int    magic ("TWSL")
+ * int    format version
+ * int    layout (LAYOUT_DENSE, or LAYOUT_SPARSE see SparseStatWriter)
+ * UTF    stat name
+ * double scale factor
+ * int    AS count (n)
+ * int[n] ASNs, ascending
+ * then per epoch (dense layout):
+ * double time (simulated ms)
+ * varint[n] values
+ * </pre>
+ *
+ * @author pendgaft
+ *
+ */
+public class BinaryStatWriter extends StatWriter {
+
+	public static final int MAGIC = 0x5457534C;
+	public static final int VERSION = 1;
+	public static final int LAYOUT_DENSE = 0;
+	public static final int LAYOUT_SPARSE = 1;
+
+	protected DataOutputStream outStream;
+	private String statName;
+	private double scaleFactor;
+	private int layout;
+
+	/**
+	 * Opens a binary stat log.
+	 *
+	 * @param fileName
+	 *            - the file to write
+	 * @param statName
+	 *            - the name of the stat, recorded in the header
+	 * @param scaleFactor
+	 *            - the scale the CSV form of the stat uses, recorded in the
+	 *            header, values themselves are written raw
+	 * @param compress
+	 *            - true if the stream should be GZIP compressed
+	 * @throws IOException
+	 *             - if the file can't be opened
+	 */
+	public BinaryStatWriter(String fileName, String statName, double scaleFactor, boolean compress)
+			throws IOException {
+		this(fileName, statName, scaleFactor, compress, BinaryStatWriter.LAYOUT_DENSE);
+	}
+
+	protected BinaryStatWriter(String fileName, String statName, double scaleFactor, boolean compress, int layout)
+			throws IOException {
+		OutputStream fileStream = new FileOutputStream(fileName);
+		if (compress) {
+			/*
+			 * Sync flush so each epoch is readable as soon as it's written
+			 */
+			fileStream = new GZIPOutputStream(fileStream, 64 * 1024, true);
+		}
+		this.outStream = new DataOutputStream(new BufferedOutputStream(fileStream, 64 * 1024));
+		this.statName = statName;
+		this.scaleFactor = scaleFactor;
+		this.layout = layout;
+	}
+
+	public void writeHeader(int[] asns) throws IOException {
+		this.outStream.writeInt(BinaryStatWriter.MAGIC);
+		this.outStream.writeInt(BinaryStatWriter.VERSION);
+		this.outStream.writeInt(this.layout);
+		this.outStream.writeUTF(this.statName);
+		this.outStream.writeDouble(this.scaleFactor);
+		this.outStream.writeInt(asns.length);
+		for (int tASN : asns) {
+			this.outStream.writeInt(tASN);
+		}
+		this.outStream.flush();
+	}
+
+	public void writeEpoch(double currentTime, long[] values) throws IOException {
+		this.outStream.writeDouble(currentTime);
+		for (long tValue : values) {
+			BinaryStatWriter.writeVarLong(this.outStream, tValue);
+		}
+		this.outStream.flush();
+	}
+
+	public void close() throws IOException {
+		this.outStream.close();
+	}
+
+	/**
+	 * Writes a value as a zigzag varint, seven bits a byte, low bits first,
+	 * high bit set on every byte but the last.
+	 *
+	 * @param outStream
+	 *            - where to write
+	 * @param value
+	 *            - the value
+	 * @throws IOException
+	 *             - if there is an error writing
+	 */
+	public static void writeVarLong(DataOutputStream outStream, long value) throws IOException {
+		long zigzag = (value << 1) ^ (value >> 63);
+		while ((zigzag & ~0x7FL) != 0) {
+			outStream.writeByte((int) ((zigzag & 0x7F) | 0x80));
+			zigzag >>>= 7;
+		}
+		outStream.writeByte((int) zigzag);
+	}
+
+	/**
+	 * Reads a value written by writeVarLong.
+	 *
+	 * @param inStream
+	 *            - where to read from
+	 * @return - the value
+	 * @throws IOException
+	 *             - if there is an error reading
+	 */
+	public static long readVarLong(DataInputStream inStream) throws IOException {
+		long zigzag = 0;
+		int shift = 0;
+		int tByte;
+		do {
+			if (shift > 63) {
+				throw new IOException("Malformed varint in stat log");
+			}
+			tByte = inStream.readUnsignedByte();
+			zigzag |= (long) (tByte & 0x7F) << shift;
+			shift += 7;
+		} while ((tByte & 0x80) != 0);
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+}
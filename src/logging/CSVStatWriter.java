@@ -0,0 +1,81 @@
+package logging;
+
+import java.io.*;
+
+/**
+ * The original wide CSV stat log, a header line of "time" and the ASNs, then
+ * one line per epoch with the time in seconds and each AS's scaled value.
+ *
+ * @author pendgaft
+ *
+ */
+public class CSVStatWriter extends StatWriter {
+
+	private BufferedWriter outputStream;
+	private double scaleFactor;
+
+	/**
+	 * Opens a CSV stat log.
+	 *
+	 * @param fileName
+	 *            - the file to write
+	 * @param scaleFactor
+	 *            - a fixed value to scale all values by, set this to 1.0 if
+	 *            you just want the values
+	 * @throws IOException
+	 *             - if the file can't be opened
+	 */
+	public CSVStatWriter(String fileName, double scaleFactor) throws IOException {
+		this(new FileWriter(fileName), scaleFactor);
+	}
+
+	/**
+	 * Writes a CSV stat log to an already open writer, used by StatLogReader
+	 * to convert binary logs.
+	 *
+	 * @param output
+	 *            - where to write, closed by close()
+	 * @param scaleFactor
+	 *            - a fixed value to scale all values by
+	 */
+	public CSVStatWriter(Writer output, double scaleFactor) {
+		this.outputStream = new BufferedWriter(output);
+		this.scaleFactor = scaleFactor;
+	}
+
+	/**
+	 * Simply writes the word time, and then the ASNs in the correct columns so
+	 * that subsequent calls to writeEpoch line up.
+	 */
+	public void writeHeader(int[] asns) throws IOException {
+		this.outputStream.write("time");
+		for (int tASN : asns) {
+			this.outputStream.write("," + tASN);
+		}
+		this.outputStream.newLine();
+	}
+
+	public void writeEpoch(double currentTime, long[] values) throws IOException {
+		/*
+		 * First, get the time recorded, convert to seconds
+		 */
+		this.outputStream.write("" + currentTime / 1000);
+
+		/*
+		 * Now write the correct data in the correct order
+		 */
+		for (long tValue : values) {
+			this.outputStream.write("," + (double) tValue / this.scaleFactor);
+		}
+
+		/*
+		 * Last, terminate the line
+		 */
+		this.outputStream.newLine();
+		this.outputStream.flush();
+	}
+
+	public void close() throws IOException {
+		this.outputStream.close();
+	}
+}
@@ -0,0 +1,82 @@
+package logging;
+
+import router.BGPSpeaker;
+import util.LogHistogram;
+
+/**
+ * The router stats summarized in the console report, kept as histograms so
+ * each worker can fill its own while it gathers its routers' stats for a
+ * logging epoch, and the driver can merge them once the gather is done.
+ *
+ * Not thread safe, give each thread its own and merge.
+ *
+ * @author pendgaft
+ *
+ */
+public class ConsoleStats {
+
+	private LogHistogram workHist;
+	private LogHistogram ribHist;
+	private LogHistogram convergeHist;
+
+	public ConsoleStats() {
+		this.workHist = new LogHistogram();
+		this.ribHist = new LogHistogram();
+		this.convergeHist = new LogHistogram();
+	}
+
+	/**
+	 * Records one router's current state.
+	 *
+	 * @param router
+	 *            - the router
+	 */
+	public void record(BGPSpeaker router) {
+		this.workHist.record(router.getWorkRemaining());
+		this.ribHist.record(router.calcTotalRouteCount());
+		this.convergeHist.record((long) (router.getLastUpdateDoneTime() / 1000.0));
+	}
+
+	/**
+	 * Folds another set of router stats into this one.
+	 *
+	 * @param other
+	 *            - the stats to add in, this is not modified
+	 */
+	public void merge(ConsoleStats other) {
+		this.workHist.merge(other.workHist);
+		this.ribHist.merge(other.ribHist);
+		this.convergeHist.merge(other.convergeHist);
+	}
+
+	/**
+	 * Empties the stats so they can be reused for the next epoch.
+	 */
+	public void reset() {
+		this.workHist.reset();
+		this.ribHist.reset();
+		this.convergeHist.reset();
+	}
+
+	/**
+	 * @return - the work remaining on each router
+	 */
+	public LogHistogram getWorkHist() {
+		return this.workHist;
+	}
+
+	/**
+	 * @return - the number of routes in each router's RIBs
+	 */
+	public LogHistogram getRibHist() {
+		return this.ribHist;
+	}
+
+	/**
+	 * @return - when each router last finished an update, in simulated
+	 *         seconds
+	 */
+	public LogHistogram getConvergeHist() {
+		return this.convergeHist;
+	}
+}
@@ -0,0 +1,192 @@
+package logging;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Log of what the JVM itself is doing, written once per logging epoch next
+ * to the per AS stat logs. Each line has how many bytes each simulation
+ * phase and each thread allocated during the epoch, then the collections
+ * that happened in it (count, total and longest pause), the heap left live
+ * after the last collection and the heap in use when the line was written.
+ * Heap after GC is the number to watch for a leak or a topology growing
+ * out of -Xmx, heap in use mostly shows garbage that hasn't been collected
+ * yet.
+ *
+ * Collections are reported by the JVM on its own thread, so the GC figures
+ * are accumulated under this object's lock. The allocation figures are
+ * handed in by the caller, as running totals, and the log works out the
+ * per epoch change.
+ *
+ * @author pendgaft
+ *
+ */
+public class JVMStatLog implements NotificationListener {
+
+	private static final double MB = 1000000.0;
+
+	private BufferedWriter outFile;
+	private List<NotificationEmitter> gcEmitters;
+	private Set<String> heapPools;
+
+	private long[] lastPhaseBytes;
+	private long[] lastThreadBytes;
+
+	private int gcCount;
+	private long gcMillis;
+	private long gcMaxMillis;
+	private long heapAfterGc;
+
+	/**
+	 * Opens the log and starts listening for collections.
+	 *
+	 * @param fileName
+	 *            - the file to write
+	 * @param phaseNames
+	 *            - the names of the phases allocations are reported for
+	 * @param threadNames
+	 *            - the names of the threads allocations are reported for
+	 * @throws IOException
+	 *             - if the file can't be opened
+	 */
+	public JVMStatLog(String fileName, String[] phaseNames, String[] threadNames) throws IOException {
+		this.lastPhaseBytes = new long[phaseNames.length];
+		this.lastThreadBytes = new long[threadNames.length];
+		this.gcCount = 0;
+		this.gcMillis = 0;
+		this.gcMaxMillis = 0;
+		this.heapAfterGc = -1;
+
+		this.outFile = new BufferedWriter(new FileWriter(fileName));
+		this.outFile.write("time");
+		for (String tName : phaseNames) {
+			this.outFile.write(",allocPhase_" + tName + "_MB");
+		}
+		for (String tName : threadNames) {
+			this.outFile.write(",allocThread_" + tName + "_MB");
+		}
+		this.outFile.write(",gcCount,gcPauseMs,gcMaxPauseMs,heapAfterGcMB,heapUsedMB");
+		this.outFile.newLine();
+
+		/*
+		 * Only the heap pools count towards heap after GC, metaspace and the
+		 * code cache show up in the same usage maps
+		 */
+		this.heapPools = new HashSet<String>();
+		for (MemoryPoolMXBean tPool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (tPool.getType() == MemoryType.HEAP) {
+				this.heapPools.add(tPool.getName());
+			}
+		}
+		this.gcEmitters = new ArrayList<NotificationEmitter>();
+		for (GarbageCollectorMXBean tCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if (tCollector instanceof NotificationEmitter) {
+				NotificationEmitter tEmitter = (NotificationEmitter) tCollector;
+				tEmitter.addNotificationListener(this, null, null);
+				this.gcEmitters.add(tEmitter);
+			}
+		}
+	}
+
+	public synchronized void handleNotification(Notification notification, Object handback) {
+		if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+			return;
+		}
+		GarbageCollectionNotificationInfo gcNote = GarbageCollectionNotificationInfo
+				.from((CompositeData) notification.getUserData());
+		long duration = gcNote.getGcInfo().getDuration();
+		this.gcCount++;
+		this.gcMillis += duration;
+		this.gcMaxMillis = Math.max(this.gcMaxMillis, duration);
+
+		long heapBytes = 0;
+		for (Map.Entry<String, MemoryUsage> tPool : gcNote.getGcInfo().getMemoryUsageAfterGc().entrySet()) {
+			if (this.heapPools.contains(tPool.getKey())) {
+				heapBytes += tPool.getValue().getUsed();
+			}
+		}
+		this.heapAfterGc = heapBytes;
+	}
+
+	/**
+	 * Writes the line for one logging epoch.
+	 *
+	 * @param currentTime
+	 *            - the simulated time of the epoch, in ms
+	 * @param phaseBytes
+	 *            - running total of bytes allocated in each phase, over all
+	 *            threads, in the order of the phase names
+	 * @param threadBytes
+	 *            - running total of bytes allocated by each thread, in the
+	 *            order of the thread names
+	 * @throws IOException
+	 *             - if the line can't be written
+	 */
+	public void logEpoch(double currentTime, long[] phaseBytes, long[] threadBytes) throws IOException {
+		int epochGcCount;
+		long epochGcMillis;
+		long epochGcMaxMillis;
+		long epochHeapAfterGc;
+		synchronized (this) {
+			epochGcCount = this.gcCount;
+			epochGcMillis = this.gcMillis;
+			epochGcMaxMillis = this.gcMaxMillis;
+			epochHeapAfterGc = this.heapAfterGc;
+			this.gcCount = 0;
+			this.gcMillis = 0;
+			this.gcMaxMillis = 0;
+		}
+
+		this.outFile.write("" + currentTime / 1000);
+		for (int counter = 0; counter < phaseBytes.length; counter++) {
+			this.outFile.write("," + (double) (phaseBytes[counter] - this.lastPhaseBytes[counter]) / JVMStatLog.MB);
+			this.lastPhaseBytes[counter] = phaseBytes[counter];
+		}
+		for (int counter = 0; counter < threadBytes.length; counter++) {
+			this.outFile.write("," + (double) (threadBytes[counter] - this.lastThreadBytes[counter])
+					/ JVMStatLog.MB);
+			this.lastThreadBytes[counter] = threadBytes[counter];
+		}
+		this.outFile.write("," + epochGcCount + "," + epochGcMillis + "," + epochGcMaxMillis);
+
+		/*
+		 * No collection yet means there's no heap after GC figure to give
+		 */
+		if (epochHeapAfterGc < 0) {
+			this.outFile.write(",");
+		} else {
+			this.outFile.write("," + (double) epochHeapAfterGc / JVMStatLog.MB);
+		}
+		this.outFile.write("," + (double) ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed()
+				/ JVMStatLog.MB);
+		this.outFile.newLine();
+		this.outFile.flush();
+	}
+
+	/**
+	 * Stops listening for collections and closes the log.
+	 *
+	 * @throws IOException
+	 *             - if there is an error closing the file
+	 */
+	public void close() throws IOException {
+		for (NotificationEmitter tEmitter : this.gcEmitters) {
+			try {
+				tEmitter.removeNotificationListener(this);
+			} catch (javax.management.ListenerNotFoundException e) {
+				/*
+				 * Already gone, nothing to do
+				 */
+			}
+		}
+		this.outFile.close();
+	}
+}
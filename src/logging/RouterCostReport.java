@@ -0,0 +1,115 @@
+package logging;
+
+import java.io.*;
+import java.util.*;
+
+import router.BGPSpeaker;
+import router.SpeakerCounters;
+
+/**
+ * End of run report on the per speaker cost counters. The top ASes by wall
+ * time go to the console, every AS goes to a CSV in the log directory so the
+ * costs can be lined up against degree, customer cone, etc.
+ *
+ * @author pendgaft
+ *
+ */
+public class RouterCostReport {
+
+	/**
+	 * Number of ASes listed on the console
+	 */
+	public static final int TOP_N = 20;
+
+	private List<BGPSpeaker> sortedRouters;
+	private long totalNanos;
+
+	/**
+	 * Builds the report, ranking the speakers by the time charged to them.
+	 * 
+	 * @param routers
+	 *            - the speakers, all must have cost counters
+	 */
+	public RouterCostReport(Collection<BGPSpeaker> routers) {
+		this.sortedRouters = new ArrayList<BGPSpeaker>(routers);
+		Collections.sort(this.sortedRouters, new Comparator<BGPSpeaker>() {
+			public int compare(BGPSpeaker lhs, BGPSpeaker rhs) {
+				long lhsNanos = lhs.getCostCounters().getTotalNanos();
+				long rhsNanos = rhs.getCostCounters().getTotalNanos();
+				if (lhsNanos != rhsNanos) {
+					return lhsNanos > rhsNanos ? -1 : 1;
+				}
+				return lhs.getASN() - rhs.getASN();
+			}
+		});
+
+		this.totalNanos = 0;
+		for (BGPSpeaker tRouter : this.sortedRouters) {
+			this.totalNanos += tRouter.getCostCounters().getTotalNanos();
+		}
+	}
+
+	/**
+	 * Builds the console table of the most expensive ASes.
+	 * 
+	 * @param topN
+	 *            - how many ASes to list
+	 * @return - the table
+	 */
+	public String buildTopReport(int topN) {
+		StringBuilder strBuild = new StringBuilder();
+		strBuild.append("Top " + Math.min(topN, this.sortedRouters.size()) + " of " + this.sortedRouters.size()
+				+ " ASes by wall time, " + String.format("%.1f", this.totalNanos / 1000000.0)
+				+ " ms charged in total\n");
+		strBuild.append(String.format("%10s %7s %10s %6s", "ASN", "degree", "ms", "share"));
+		for (String tName : SpeakerCounters.ACTIVITY_NAMES) {
+			strBuild.append(String.format(" %11s", tName));
+		}
+		strBuild.append(String.format(" %10s %10s %10s %8s\n", "processed", "recalcs", "emitted", "maxQueue"));
+
+		for (int counter = 0; counter < Math.min(topN, this.sortedRouters.size()); counter++) {
+			BGPSpeaker tRouter = this.sortedRouters.get(counter);
+			SpeakerCounters tCounters = tRouter.getCostCounters();
+			strBuild.append(String.format("%10d %7d %10.1f %5.1f%%", tRouter.getASN(), tRouter.getASObject()
+					.getNeighbors().size(), tCounters.getTotalNanos() / 1000000.0, tCounters.getTotalNanos() * 100.0
+					/ Math.max(1, this.totalNanos)));
+			for (int activity = 0; activity < SpeakerCounters.ACTIVITY_NAMES.length; activity++) {
+				strBuild.append(String.format(" %11.1f", tCounters.getNanos(activity) / 1000000.0));
+			}
+			strBuild.append(String.format(" %10d %10d %10d %8d\n", tCounters.getUpdatesProcessed(),
+					tCounters.getBestPathRecalcs(), tCounters.getUpdatesEmitted(), tCounters.getQueueHighWater()));
+		}
+		return strBuild.toString();
+	}
+
+	/**
+	 * Writes every AS's counters as CSV, most expensive first.
+	 * 
+	 * @param fileName
+	 *            - the file to write
+	 * @throws IOException
+	 *             - if the file can't be written
+	 */
+	public void writeCSV(String fileName) throws IOException {
+		BufferedWriter outFile = new BufferedWriter(new FileWriter(fileName));
+		outFile.write("asn,degree,totalNs");
+		for (String tName : SpeakerCounters.ACTIVITY_NAMES) {
+			outFile.write("," + tName + "Ns");
+		}
+		outFile.write(",updatesProcessed,bestPathRecalcs,updatesEmitted,queueHighWater");
+		outFile.newLine();
+
+		for (BGPSpeaker tRouter : this.sortedRouters) {
+			SpeakerCounters tCounters = tRouter.getCostCounters();
+			outFile.write(tRouter.getASN() + "," + tRouter.getASObject().getNeighbors().size() + ","
+					+ tCounters.getTotalNanos());
+			for (int activity = 0; activity < SpeakerCounters.ACTIVITY_NAMES.length; activity++) {
+				outFile.write("," + tCounters.getNanos(activity));
+			}
+			outFile.write("," + tCounters.getUpdatesProcessed() + "," + tCounters.getBestPathRecalcs() + ","
+					+ tCounters.getUpdatesEmitted() + "," + tCounters.getQueueHighWater());
+			outFile.newLine();
+		}
+		outFile.close();
+	}
+}
@@ -4,36 +4,89 @@ import java.io.*;
 import java.util.*;
 
 import router.BGPSpeaker;
-import util.Stats;
+import util.LogHistogram;
 
 //TODO hit this with the multi-thread stick...
 public class SimLogger {
 
 	private String logDir = null;
-	
-	private BufferedWriter memOut;
-	private BufferedWriter tableSizeOut;
-	private BufferedWriter workTodoOut;
+	private LogFormat format;
 
-	private List<Integer> orderedASNList;
+	private StatCollector[] collectors;
+	private StatWriter[] statWriters;
+	private StatWriterThread writerThread;
+	private long[][] epochValues;
+
+	/*
+	 * The console summary of the epoch being gathered, and of the last one
+	 * finished along with the sim time it was taken at
+	 */
+	private ConsoleStats epochConsoleStats;
+	private ConsoleStats lastConsoleStats;
+	private double lastConsoleStatsTime;
+
+	private int[] orderedASNs;
+	private BGPSpeaker[] orderedRouters;
 	private HashMap<Integer, BGPSpeaker> topology;
 
 	private double nextLoggingHorizon;
 	public static final double LOG_EPOCH = events.SimEvent.SECOND_MULTIPLIER * 30;
 
-	private static final String MEM_STUB = "mem.csv";
-	private static final String TABLE_STUB = "ribSize.csv";
-	private static final String WORKTODO_STUB = "workQueue.csv";
+	/**
+	 * How the per AS stat logs are written, CSV is the wide human readable
+	 * form, the binary forms are far smaller and faster to write and can be
+	 * turned back into CSV with StatLogReader. The sparse forms only record
+	 * the ASes that changed each epoch, plus periodic keyframes.
+	 */
+	public enum LogFormat {
+		CSV, BINARY, BINARY_GZ, SPARSE, SPARSE_GZ
+	}
 
 	public SimLogger(String fileBase, HashMap<Integer, BGPSpeaker> topo) throws IOException {
+		this(fileBase, topo, LogFormat.CSV, StatCollectorRegistry.lookup(null));
+	}
+
+	/**
+	 * Builds a logger, opening a log file for each stat.
+	 * 
+	 * @param fileBase
+	 *            - the directory to put the logs in
+	 * @param topo
+	 *            - the routers being simulated
+	 * @param logFormat
+	 *            - the format to write the logs in
+	 * @param stats
+	 *            - the stats to record, see StatCollectorRegistry
+	 * @throws IOException
+	 *             - if a log file can't be opened
+	 */
+	public SimLogger(String fileBase, HashMap<Integer, BGPSpeaker> topo, LogFormat logFormat,
+			List<StatCollector> stats) throws IOException {
 		this.logDir = fileBase;
-		this.memOut = new BufferedWriter(new FileWriter(this.logDir + File.separator + SimLogger.MEM_STUB));
-		this.tableSizeOut = new BufferedWriter(new FileWriter(this.logDir + File.separator + SimLogger.TABLE_STUB));
-		this.workTodoOut = new BufferedWriter(new FileWriter(this.logDir + File.separator + SimLogger.WORKTODO_STUB));
+		this.format = logFormat;
+		this.collectors = stats.toArray(new StatCollector[stats.size()]);
+		this.statWriters = new StatWriter[this.collectors.length];
+		for (int counter = 0; counter < this.collectors.length; counter++) {
+			this.statWriters[counter] = this.openStatWriter(this.collectors[counter].getName(),
+					this.collectors[counter].getScaleFactor());
+		}
 
 		this.topology = topo;
-		this.orderedASNList = this.buildOrderedASNList(topo);
+		this.buildOrderedASNList(topo);
 		this.nextLoggingHorizon = SimLogger.LOG_EPOCH;
+		this.writerThread = null;
+		this.lastConsoleStats = null;
+		this.lastConsoleStatsTime = 0.0;
+	}
+
+	/**
+	 * Fetches the directory the logs are written to, other run outputs go
+	 * here as well.
+	 * 
+	 * @return - the log directory
+	 */
+	public String getLogDir() {
+		return this.logDir;
 	}
 
 	/**
@@ -47,56 +100,121 @@ public class SimLogger {
 
 	/**
 	 * Public function to tell the sim logger to setup all required objects for
-	 * logging. After this function is called calls to processLogging are
-	 * expected to function. This MUST be called before processLogging is
-	 * called.
+	 * logging, including starting the background writer. After this function
+	 * is called calls to processLogging are expected to function. This MUST be
+	 * called before processLogging is called.
 	 * 
 	 * @throws IOException
 	 *             - if there is an error from internal functions doing setup
 	 */
 	public void setupStatPush() throws IOException {
-		this.setupLoggingHeader(this.memOut);
-		this.setupLoggingHeader(this.tableSizeOut);
-		this.setupLoggingHeader(this.workTodoOut);
+		for (StatWriter tWriter : this.statWriters) {
+			tWriter.writeHeader(this.orderedASNs);
+		}
+		this.writerThread = new StatWriterThread(this.statWriters);
 	}
 
 	/**
 	 * Public method to tell the logger that all nodes are ready to have logging
 	 * done for the current logging wall. This will trigger the fetching of
-	 * stats directly from the BGPSpeaker objects and cause the corrisponding
-	 * data to be written to output files.
+	 * stats directly from the BGPSpeaker objects and hand the corrisponding
+	 * data off to the background writer to be written to output files. This
+	 * gathers on the calling thread, FlowDriver instead spreads the gathering
+	 * over its workers with beginGather, gatherStats and finishGather.
 	 * 
 	 * @throws IOException
-	 *             - if there is an error writting to any of the log files
+	 *             - if the background writer has hit an error writting to any
+	 *             of the log files
 	 */
 	public void processLogging() throws IOException {
+		this.beginGather();
+		this.gatherStats(this.orderedRouters, this.getSlots(Arrays.asList(this.orderedRouters)),
+				this.epochConsoleStats);
+		this.finishGather();
+	}
 
-		HashMap<Integer, Double> memMap = new HashMap<Integer, Double>();
-		HashMap<Integer, Double> tableSize = new HashMap<Integer, Double>();
-		HashMap<Integer, Double> queueSize = new HashMap<Integer, Double>();
+	/**
+	 * Sets up fresh arrays for the current logging epoch, gatherStats can be
+	 * called (from any threads, for disjoint sets of routers) after this.
+	 */
+	public void beginGather() {
+		this.epochValues = new long[this.collectors.length][this.orderedRouters.length];
+		this.epochConsoleStats = new ConsoleStats();
+	}
 
-		/*
-		 * Fetch all of the memory loads and table sizes
-		 */
-		//TODO make this configurable in the future (as to what stats we're tracking)
-		for (int tASN : this.topology.keySet()) {
-			memMap.put(tASN, (double) this.topology.get(tASN).memLoad());
-			tableSize.put(tASN, (double) this.topology.get(tASN).calcTotalRouteCount());
-			queueSize.put(tASN, (double) this.topology.get(tASN).getWorkRemaining());
+	/**
+	 * Fetches the positions in the stat arrays of a set of routers, callers
+	 * gathering the same routers every epoch should hold on to these.
+	 * 
+	 * @param routers
+	 *            - the routers in question
+	 * @return - the slot of each router, in the order given
+	 */
+	public int[] getSlots(Collection<BGPSpeaker> routers) {
+		int[] slots = new int[routers.size()];
+		int pos = 0;
+		for (BGPSpeaker tRouter : routers) {
+			slots[pos] = Arrays.binarySearch(this.orderedASNs, tRouter.getASN());
+			pos++;
 		}
+		return slots;
+	}
 
-		/*
-		 * Actually do the logging, these can throw IOExceptions, that should be
-		 * handled by the calling class
-		 */
-		this.writeToLog(memMap, this.nextLoggingHorizon, this.memOut, 1000000.0);
-		this.writeToLog(tableSize, this.nextLoggingHorizon, this.tableSizeOut, 1000.0);
-		this.writeToLog(queueSize, this.nextLoggingHorizon, this.workTodoOut, 1000.0);
+	/**
+	 * Gathers every enabled stat for a set of routers into the current epoch's
+	 * arrays, and records the routers in the caller's console stats. Each
+	 * router only writes its own slots, so workers can gather their own
+	 * routers at the same time.
+	 * 
+	 * @param routers
+	 *            - the routers to gather
+	 * @param slots
+	 *            - their slots, from getSlots
+	 * @param consoleStats
+	 *            - the caller's own console stats, hand them to
+	 *            mergeConsoleStats once every gather is done
+	 */
+	public void gatherStats(BGPSpeaker[] routers, int[] slots, ConsoleStats consoleStats) {
+		long[][] values = this.epochValues;
+		for (int counter = 0; counter < routers.length; counter++) {
+			for (int statCounter = 0; statCounter < this.collectors.length; statCounter++) {
+				values[statCounter][slots[counter]] = this.collectors[statCounter].collect(routers[counter]);
+			}
+			consoleStats.record(routers[counter]);
+		}
+	}
 
+	/**
+	 * Folds one gatherer's console stats into the current epoch's, call from
+	 * a single thread after every gatherStats call for the epoch is done and
+	 * before finishGather.
+	 * 
+	 * @param consoleStats
+	 *            - the stats filled by gatherStats, this is not modified
+	 */
+	public void mergeConsoleStats(ConsoleStats consoleStats) {
+		this.epochConsoleStats.merge(consoleStats);
+	}
+
+	/**
+	 * Hands the gathered epoch to the background writer and moves on to the
+	 * next logging epoch. Every gatherStats call for the epoch must have
+	 * finished (and be visible to this thread) first.
+	 * 
+	 * @throws IOException
+	 *             - if the background writer has hit an error writting to any
+	 *             of the log files
+	 */
+	public void finishGather() throws IOException {
 		/*
-		 * Spit some stuff to the console
+		 * Hand the snapshot off to be written, failures in the writer surface
+		 * as IOExceptions here, that should be handled by the calling class
 		 */
-		//this.printToConsole();
+		this.writerThread.submit(this.nextLoggingHorizon, this.epochValues);
+		this.epochValues = null;
+		this.lastConsoleStats = this.epochConsoleStats;
+		this.lastConsoleStatsTime = this.nextLoggingHorizon;
+		this.epochConsoleStats = null;
 
 		/*
 		 * Last thing, since we're done w/ this window, scoot the time horizon
@@ -107,89 +225,65 @@ public class SimLogger {
 
 	/**
 	 * Public method to tell the logging object that we're done and that it
-	 * should close all of the logging buffers.
+	 * should close all of the logging buffers. This waits for the background
+	 * writer to get everything to disk.
 	 * 
 	 * @throws IOException
-	 *             - if there is an error closing files
+	 *             - if there is an error writing or closing files
 	 */
 	public void doneLogging() throws IOException {
-		this.memOut.close();
-		this.tableSizeOut.close();
-		this.workTodoOut.close();
+		if (this.writerThread != null) {
+			this.writerThread.finish();
+		} else {
+			for (StatWriter tWriter : this.statWriters) {
+				tWriter.close();
+			}
+		}
 	}
 
 	/**
-	 * Function that builds a list of ASNs in ASN order. This is used in order
-	 * to report stats across a csv in a consistent manner.
-	 * 
-	 * @return a list of ASNs in the active topo in ascending order
+	 * Function that builds the arrays of ASNs and routers in ASN order. This is
+	 * used in order to report stats across a log in a consistent manner.
 	 */
-	private List<Integer> buildOrderedASNList(HashMap<Integer, BGPSpeaker> topo) {
-		List<Integer> retList = new ArrayList<Integer>();
-		retList.addAll(topo.keySet());
-		Collections.sort(retList);
-		return retList;
-	}
-
-	/**
-	 * Interal function to setup the header for a log file. Simple writes the
-	 * word time, and then sets up the ASNs in the correct columns so that
-	 * subsequent calls to writeToLog will record the correct values. This
-	 * should be called exactly once for each stream.
-	 * 
-	 * @param stream
-	 *            - the stream we're going to be writting data to eventually.
-	 * @throws IOException
-	 *             - if there is an error writting to the file
-	 */
-	private void setupLoggingHeader(BufferedWriter stream) throws IOException {
-
-		stream.write("time");
-		for (int counter = 0; counter < this.orderedASNList.size(); counter++) {
-			stream.write("," + this.orderedASNList.get(counter));
+	private void buildOrderedASNList(HashMap<Integer, BGPSpeaker> topo) {
+		List<Integer> asnList = new ArrayList<Integer>();
+		asnList.addAll(topo.keySet());
+		Collections.sort(asnList);
+
+		this.orderedASNs = new int[asnList.size()];
+		this.orderedRouters = new BGPSpeaker[asnList.size()];
+		for (int counter = 0; counter < asnList.size(); counter++) {
+			this.orderedASNs[counter] = asnList.get(counter);
+			this.orderedRouters[counter] = topo.get(asnList.get(counter));
 		}
-		stream.newLine();
 	}
 
 	/**
-	 * Internal function to flush values to a log file. Takes a mapping between
-	 * ASNs and a value that sadly must be a double. The value can have a
-	 * universal scalling applied to it if desired.
+	 * Opens the log file for one stat in the configured format.
 	 * 
-	 * @param values
-	 *            - the mapping from ASNs to values, values must be doubles
-	 * @param currentTime
-	 *            - the simulated time that this data is taken from
-	 * @param outputStream
-	 *            - the buffer where the data should be written
+	 * @param stub
+	 *            - the name of the stat, the file is named after it
 	 * @param scaleFactor
-	 *            - a fixed value to scale all values stored in the map by, set
-	 *            this to 1.0 if you just want the values
+	 *            - a fixed value the stat is scaled by in CSV form
+	 * @return - the writer for the stat
 	 * @throws IOException
-	 *             - if anything breaks writing to the file
+	 *             - if the file can't be opened
 	 */
-	private void writeToLog(HashMap<Integer, Double> values, double currentTime, BufferedWriter outputStream,
-			double scaleFactor) throws IOException {
-
-		/*
-		 * First, get the time recorded, convert to seconds
-		 */
-		outputStream.write("" + currentTime / 1000);
-
-		/*
-		 * Now write the correct data in the correct order
-		 */
-		int currentAS;
-		for (int counter = 0; counter < this.orderedASNList.size(); counter++) {
-			currentAS = this.orderedASNList.get(counter);
-			outputStream.write("," + values.get(currentAS) / scaleFactor);
+	private StatWriter openStatWriter(String stub, double scaleFactor) throws IOException {
+		String fileBase = this.logDir + File.separator + stub;
+		if (this.format == LogFormat.CSV) {
+			return new CSVStatWriter(fileBase + ".csv", scaleFactor);
+		} else if (this.format == LogFormat.BINARY) {
+			return new BinaryStatWriter(fileBase + ".twl", stub, scaleFactor, false);
+		} else if (this.format == LogFormat.BINARY_GZ) {
+			return new BinaryStatWriter(fileBase + ".twl.gz", stub, scaleFactor, true);
+		} else if (this.format == LogFormat.SPARSE) {
+			return new SparseStatWriter(fileBase + ".twl", stub, scaleFactor, false);
+		} else if (this.format == LogFormat.SPARSE_GZ) {
+			return new SparseStatWriter(fileBase + ".twl.gz", stub, scaleFactor, true);
+		} else {
+			throw new RuntimeException("Log format not recognized: " + this.format);
 		}
-
-		/*
-		 * Last, terminate the line
-		 */
-		outputStream.newLine();
-		outputStream.flush();
 	}
 
 	private String timeFormatter(double timeVal) {
@@ -225,18 +319,42 @@ public class SimLogger {
 		strBuild.append(simTimeStr);
 		strBuild.append("\n");
 
-		List<Long> stillToGo = new LinkedList<Long>();
-		for (BGPSpeaker tRouter : this.topology.values()) {
-			stillToGo.add(tRouter.getWorkRemaining());
+		/*
+		 * The router stats come from the last logging epoch, they're gathered
+		 * on the workers along with the stat logs rather than by walking
+		 * every router here
+		 */
+		if (this.lastConsoleStats == null) {
+			strBuild.append("No router stats gathered yet");
+		} else {
+			strBuild.append("Router stats as of: ");
+			strBuild.append(this.timeFormatter(this.lastConsoleStatsTime / 1000.0));
+			strBuild.append("\n");
+			strBuild.append("avg work to do: ");
+			strBuild.append(Double.toString(this.lastConsoleStats.getWorkHist().getMean()));
+			strBuild.append(" ");
+			this.appendQuantiles(strBuild, "work to do", this.lastConsoleStats.getWorkHist());
+			strBuild.append("\n");
+			strBuild.append("avg rib size: ");
+			strBuild.append(Double.toString(this.lastConsoleStats.getRibHist().getMean()));
+			strBuild.append(" ");
+			this.appendQuantiles(strBuild, "rib size", this.lastConsoleStats.getRibHist());
+			strBuild.append("\n");
+			this.appendQuantiles(strBuild, "last update done (sim s)", this.lastConsoleStats.getConvergeHist());
 		}
-		double avg = Stats.mean(stillToGo);
-		double med = Stats.median(stillToGo);
-
-		strBuild.append("avg work to do: ");
-		strBuild.append(Double.toString(avg));
-		strBuild.append(" med work to do: ");
-		strBuild.append(Double.toString(med));
 
 		System.out.println(strBuild.toString());
 	}
+
+	private void appendQuantiles(StringBuilder strBuild, String statName, LogHistogram hist) {
+		strBuild.append(statName);
+		strBuild.append(" p50/p90/p99/max: ");
+		strBuild.append(hist.getValueAtQuantile(0.5));
+		strBuild.append("/");
+		strBuild.append(hist.getValueAtQuantile(0.9));
+		strBuild.append("/");
+		strBuild.append(hist.getValueAtQuantile(0.99));
+		strBuild.append("/");
+		strBuild.append(hist.getMax());
+	}
 }
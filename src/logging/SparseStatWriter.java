@@ -0,0 +1,96 @@
+package logging;
+
+import java.io.*;
+
+/**
+ * Binary stat log that only records the ASes whose value changed since the
+ * previous epoch. Once a run converges almost nothing changes from epoch to
+ * epoch, so the long tail of the run costs next to nothing to log. A full
+ * keyframe is written every KEYFRAME_INTERVAL epochs so a reader (or a human
+ * with a damaged file) never has to replay the whole log to get a value.
+ *
+ * The header is the same as BinaryStatWriter's, with the sparse layout. Each
+ * epoch is then:
+ *
+ * <pre>
+ * double time (simulated ms)
+ * byte   EPOCH_KEYFRAME or EPOCH_DELTA
+ * keyframe: varint[n] values
+ * delta:    varint change count (c), then c pairs of
+ *           varint column gap from the previous changed column (the first is from -1)
+ *           varint change in the value
+ * </pre>
+ *
+ * @author pendgaft
+ *
+ */
+public class SparseStatWriter extends BinaryStatWriter {
+
+	public static final byte EPOCH_KEYFRAME = 0;
+	public static final byte EPOCH_DELTA = 1;
+
+	/**
+	 * Epochs between full keyframes, 100 epochs is 50 minutes of sim time
+	 */
+	private static final int KEYFRAME_INTERVAL = 100;
+
+	private long[] lastValues;
+	private int epochsSinceKeyframe;
+
+	/**
+	 * Opens a sparse binary stat log.
+	 *
+	 * @param fileName
+	 *            - the file to write
+	 * @param statName
+	 *            - the name of the stat, recorded in the header
+	 * @param scaleFactor
+	 *            - the scale the CSV form of the stat uses, recorded in the
+	 *            header
+	 * @param compress
+	 *            - true if the stream should be GZIP compressed
+	 * @throws IOException
+	 *             - if the file can't be opened
+	 */
+	public SparseStatWriter(String fileName, String statName, double scaleFactor, boolean compress)
+			throws IOException {
+		super(fileName, statName, scaleFactor, compress, BinaryStatWriter.LAYOUT_SPARSE);
+		this.lastValues = null;
+		this.epochsSinceKeyframe = 0;
+	}
+
+	public void writeEpoch(double currentTime, long[] values) throws IOException {
+		this.outStream.writeDouble(currentTime);
+
+		if (this.lastValues == null || this.epochsSinceKeyframe >= SparseStatWriter.KEYFRAME_INTERVAL) {
+			this.outStream.writeByte(SparseStatWriter.EPOCH_KEYFRAME);
+			for (long tValue : values) {
+				BinaryStatWriter.writeVarLong(this.outStream, tValue);
+			}
+			this.lastValues = values.clone();
+			this.epochsSinceKeyframe = 0;
+		} else {
+			int changeCount = 0;
+			for (int counter = 0; counter < values.length; counter++) {
+				if (values[counter] != this.lastValues[counter]) {
+					changeCount++;
+				}
+			}
+
+			this.outStream.writeByte(SparseStatWriter.EPOCH_DELTA);
+			BinaryStatWriter.writeVarLong(this.outStream, changeCount);
+			int lastColumn = -1;
+			for (int counter = 0; counter < values.length; counter++) {
+				if (values[counter] != this.lastValues[counter]) {
+					BinaryStatWriter.writeVarLong(this.outStream, counter - lastColumn);
+					BinaryStatWriter.writeVarLong(this.outStream, values[counter] - this.lastValues[counter]);
+					this.lastValues[counter] = values[counter];
+					lastColumn = counter;
+				}
+			}
+		}
+
+		this.epochsSinceKeyframe++;
+		this.outStream.flush();
+	}
+}
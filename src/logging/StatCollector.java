@@ -0,0 +1,49 @@
+package logging;
+
+import router.BGPSpeaker;
+
+/**
+ * A named per router statistic that the logger records every logging epoch.
+ * Each enabled collector gets its own log file, named after it. Collectors
+ * are looked up by name in StatCollectorRegistry.
+ *
+ * @author pendgaft
+ *
+ */
+public abstract class StatCollector {
+
+	private String name;
+	private double scaleFactor;
+
+	/**
+	 * Builds a collector.
+	 *
+	 * @param name
+	 *            - the name of the stat, used on the command line and as the
+	 *            log file name
+	 * @param scaleFactor
+	 *            - a fixed value to scale values by in the CSV form of the log
+	 */
+	public StatCollector(String name, double scaleFactor) {
+		this.name = name;
+		this.scaleFactor = scaleFactor;
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public double getScaleFactor() {
+		return this.scaleFactor;
+	}
+
+	/**
+	 * Fetches the stat's current value for one router. This is called for
+	 * every router every epoch, so it should be cheap.
+	 *
+	 * @param router
+	 *            - the router to measure
+	 * @return - the raw value of the stat
+	 */
+	public abstract long collect(BGPSpeaker router);
+}
@@ -0,0 +1,98 @@
+package logging;
+
+import java.util.*;
+
+import router.BGPSpeaker;
+
+/**
+ * Registry of the per router stats the logger knows how to record. Adding a
+ * metric is a matter of registering a collector here, the logger gathers all
+ * enabled collectors in one pass over the routers.
+ *
+ * @author pendgaft
+ *
+ */
+public class StatCollectorRegistry {
+
+	private static final LinkedHashMap<String, StatCollector> COLLECTORS = new LinkedHashMap<String, StatCollector>();
+
+	/**
+	 * The stats logged if none are asked for, the original three
+	 */
+	public static final String[] DEFAULT_STATS = { "mem", "ribSize", "workQueue" };
+
+	static {
+		StatCollectorRegistry.register(new StatCollector("mem", 1000000.0) {
+			public long collect(BGPSpeaker router) {
+				return router.memLoad();
+			}
+		});
+		StatCollectorRegistry.register(new StatCollector("ribSize", 1000.0) {
+			public long collect(BGPSpeaker router) {
+				return router.calcTotalRouteCount();
+			}
+		});
+		StatCollectorRegistry.register(new StatCollector("workQueue", 1000.0) {
+			public long collect(BGPSpeaker router) {
+				return router.getWorkRemaining();
+			}
+		});
+		/*
+		 * This one walks the loc RIB, so it costs more than the others
+		 */
+		StatCollectorRegistry.register(new StatCollector("locRibSize", 1000.0) {
+			public long collect(BGPSpeaker router) {
+				return router.calcDistinctDestCount();
+			}
+		});
+		StatCollectorRegistry.register(new StatCollector("activeQueues", 1.0) {
+			public long collect(BGPSpeaker router) {
+				return router.countActiveQueues(-1);
+			}
+		});
+	}
+
+	/**
+	 * Adds a collector to the registry, replacing any with the same name.
+	 *
+	 * @param collector
+	 *            - the collector to add
+	 */
+	public static synchronized void register(StatCollector collector) {
+		StatCollectorRegistry.COLLECTORS.put(collector.getName(), collector);
+	}
+
+	/**
+	 * Fetches the names of every registered collector, in registration order.
+	 *
+	 * @return - the collector names
+	 */
+	public static synchronized List<String> getNames() {
+		return new ArrayList<String>(StatCollectorRegistry.COLLECTORS.keySet());
+	}
+
+	/**
+	 * Looks up collectors by name.
+	 *
+	 * @param names
+	 *            - the names of the stats wanted, null gives the defaults,
+	 *            duplicates are dropped
+	 * @return - the collectors, in the order asked for
+	 */
+	public static synchronized List<StatCollector> lookup(List<String> names) {
+		if (names == null) {
+			names = Arrays.asList(StatCollectorRegistry.DEFAULT_STATS);
+		}
+
+		List<StatCollector> retList = new ArrayList<StatCollector>();
+		for (String tName : new LinkedHashSet<String>(names)) {
+			StatCollector tCollector = StatCollectorRegistry.COLLECTORS.get(tName);
+			if (tCollector == null) {
+				throw new IllegalArgumentException("Unknown stat " + tName + ", known stats are "
+						+ StatCollectorRegistry.COLLECTORS.keySet());
+			}
+			retList.add(tCollector);
+		}
+		return retList;
+	}
+}
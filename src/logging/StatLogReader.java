@@ -0,0 +1,247 @@
+package logging;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.*;
+
+/**
+ * Reads binary stat logs written by BinaryStatWriter or SparseStatWriter
+ * (compressed or not, this is detected from the file, as is the layout), and
+ * as a tool converts them to the same CSV the CSV log format would have
+ * produced, optionally only for some ASes or a window of time.
+ *
+ * @author pendgaft
+ *
+ */
+public class StatLogReader {
+
+	private DataInputStream inStream;
+	private String statName;
+	private double scaleFactor;
+	private int[] asns;
+	private int layout;
+
+	private double epochTime;
+	private long[] epochValues;
+
+	public static void main(String[] args) throws IOException {
+		ArgumentParser argParse = ArgumentParsers.newArgumentParser("StatLogReader").description(
+				"Converts a binary stat log to CSV.");
+		argParse.addArgument("log").help("binary stat log file");
+		argParse.addArgument("-a", "--as").help("only output these ASNs").type(Integer.class).nargs("+");
+		argParse.addArgument("-s", "--start").help("first sim time to output, in seconds").type(Double.class);
+		argParse.addArgument("-e", "--end").help("last sim time to output, in seconds").type(Double.class);
+		argParse.addArgument("-o", "--out").help("CSV file to write, defaults to stdout");
+
+		Namespace ns = null;
+		try {
+			ns = argParse.parseArgs(args);
+		} catch (ArgumentParserException e1) {
+			argParse.handleError(e1);
+			System.exit(-1);
+		}
+
+		StatLogReader reader = new StatLogReader(ns.getString("log"));
+
+		/*
+		 * Work out which columns we're keeping
+		 */
+		int[] columns;
+		List<Integer> wantedASNs = ns.getList("as");
+		if (wantedASNs == null) {
+			columns = new int[reader.getASNs().length];
+			for (int counter = 0; counter < columns.length; counter++) {
+				columns[counter] = counter;
+			}
+		} else {
+			columns = new int[wantedASNs.size()];
+			for (int counter = 0; counter < columns.length; counter++) {
+				columns[counter] = reader.getColumn(wantedASNs.get(counter));
+				if (columns[counter] < 0) {
+					System.err.println("ASN " + wantedASNs.get(counter) + " is not in " + ns.getString("log"));
+					System.exit(-1);
+				}
+			}
+		}
+		double startTime = Double.NEGATIVE_INFINITY;
+		if (ns.getDouble("start") != null) {
+			startTime = ns.getDouble("start") * 1000.0;
+		}
+		double endTime = Double.POSITIVE_INFINITY;
+		if (ns.getDouble("end") != null) {
+			endTime = ns.getDouble("end") * 1000.0;
+		}
+
+		Writer output;
+		if (ns.getString("out") == null) {
+			output = new OutputStreamWriter(System.out);
+		} else {
+			output = new FileWriter(ns.getString("out"));
+		}
+		CSVStatWriter csvOut = new CSVStatWriter(output, reader.getScaleFactor());
+		int[] outASNs = new int[columns.length];
+		for (int counter = 0; counter < columns.length; counter++) {
+			outASNs[counter] = reader.getASNs()[columns[counter]];
+		}
+		csvOut.writeHeader(outASNs);
+
+		long[] outValues = new long[columns.length];
+		while (reader.nextEpoch()) {
+			if (reader.getTime() < startTime) {
+				continue;
+			}
+			if (reader.getTime() > endTime) {
+				break;
+			}
+			for (int counter = 0; counter < columns.length; counter++) {
+				outValues[counter] = reader.getValues()[columns[counter]];
+			}
+			csvOut.writeEpoch(reader.getTime(), outValues);
+		}
+		csvOut.close();
+		reader.close();
+	}
+
+	/**
+	 * Opens a binary stat log and reads its header.
+	 *
+	 * @param fileName
+	 *            - the log file
+	 * @throws IOException
+	 *             - if the file can't be read or isn't a stat log we
+	 *             understand
+	 */
+	public StatLogReader(String fileName) throws IOException {
+		InputStream fileStream = new BufferedInputStream(new FileInputStream(fileName), 64 * 1024);
+		fileStream.mark(2);
+		int firstByte = fileStream.read();
+		int secondByte = fileStream.read();
+		fileStream.reset();
+		if (firstByte == 0x1f && secondByte == 0x8b) {
+			fileStream = new BufferedInputStream(new GZIPInputStream(fileStream, 64 * 1024), 64 * 1024);
+		}
+		this.inStream = new DataInputStream(fileStream);
+
+		if (this.inStream.readInt() != BinaryStatWriter.MAGIC) {
+			throw new IOException("Not a binary stat log: " + fileName);
+		}
+		int version = this.inStream.readInt();
+		if (version != BinaryStatWriter.VERSION) {
+			throw new IOException("Unsupported stat log version " + version + ": " + fileName);
+		}
+		this.layout = this.inStream.readInt();
+		if (this.layout != BinaryStatWriter.LAYOUT_DENSE && this.layout != BinaryStatWriter.LAYOUT_SPARSE) {
+			throw new IOException("Unknown stat log layout " + this.layout + ": " + fileName);
+		}
+		this.statName = this.inStream.readUTF();
+		this.scaleFactor = this.inStream.readDouble();
+		this.asns = new int[this.inStream.readInt()];
+		for (int counter = 0; counter < this.asns.length; counter++) {
+			this.asns[counter] = this.inStream.readInt();
+		}
+
+		this.epochTime = Double.NaN;
+		this.epochValues = new long[this.asns.length];
+	}
+
+	/**
+	 * Reads the next epoch, after which getTime and getValues describe it. A
+	 * log cut off part way through an epoch (the run died) just ends at the
+	 * last full epoch.
+	 *
+	 * @return - true if an epoch was read, false at the end of the log
+	 * @throws IOException
+	 *             - if there is an error reading the file
+	 */
+	public boolean nextEpoch() throws IOException {
+		try {
+			this.epochTime = this.inStream.readDouble();
+
+			/*
+			 * Sparse logs may carry just the changes since the last epoch
+			 */
+			if (this.layout == BinaryStatWriter.LAYOUT_SPARSE) {
+				byte epochType = this.inStream.readByte();
+				if (epochType == SparseStatWriter.EPOCH_DELTA) {
+					this.readDelta();
+					return true;
+				} else if (epochType != SparseStatWriter.EPOCH_KEYFRAME) {
+					throw new IOException("Bad epoch type " + epochType + " in sparse stat log");
+				}
+			}
+
+			for (int counter = 0; counter < this.epochValues.length; counter++) {
+				this.epochValues[counter] = BinaryStatWriter.readVarLong(this.inStream);
+			}
+			return true;
+		} catch (EOFException e) {
+			return false;
+		}
+	}
+
+	private void readDelta() throws IOException {
+		long changeCount = BinaryStatWriter.readVarLong(this.inStream);
+		int column = -1;
+		for (long counter = 0; counter < changeCount; counter++) {
+			column += (int) BinaryStatWriter.readVarLong(this.inStream);
+			if (column < 0 || column >= this.epochValues.length) {
+				throw new IOException("Bad column " + column + " in sparse stat log");
+			}
+			this.epochValues[column] += BinaryStatWriter.readVarLong(this.inStream);
+		}
+	}
+
+	public String getStatName() {
+		return this.statName;
+	}
+
+	public double getScaleFactor() {
+		return this.scaleFactor;
+	}
+
+	/**
+	 * Fetches the ASNs in the log, in column order.
+	 *
+	 * @return - the ASNs, ascending
+	 */
+	public int[] getASNs() {
+		return this.asns;
+	}
+
+	/**
+	 * Finds the column an AS's values are in.
+	 *
+	 * @param asn
+	 *            - the ASN to look for
+	 * @return - the column, or a negative value if the AS isn't in the log
+	 */
+	public int getColumn(int asn) {
+		return Arrays.binarySearch(this.asns, asn);
+	}
+
+	/**
+	 * Fetches the simulated time of the current epoch.
+	 *
+	 * @return - the time, in simulated ms
+	 */
+	public double getTime() {
+		return this.epochTime;
+	}
+
+	/**
+	 * Fetches the current epoch's raw values, this array is reused by the
+	 * next call to nextEpoch.
+	 *
+	 * @return - one value per AS, in column order
+	 */
+	public long[] getValues() {
+		return this.epochValues;
+	}
+
+	public void close() throws IOException {
+		this.inStream.close();
+	}
+}
@@ -0,0 +1,47 @@
+package logging;
+
+import java.io.*;
+
+/**
+ * A destination for one per AS statistic, written once per logging epoch.
+ * Values always arrive as one long per AS, in the order of the ASN array given
+ * to the header.
+ *
+ * @author pendgaft
+ *
+ */
+public abstract class StatWriter {
+
+	/**
+	 * Writes whatever the format needs before the first epoch, called exactly
+	 * once.
+	 *
+	 * @param asns
+	 *            - the ASNs being logged, in ascending order, this fixes the
+	 *            order of every epoch's values
+	 * @throws IOException
+	 *             - if there is an error writing
+	 */
+	public abstract void writeHeader(int[] asns) throws IOException;
+
+	/**
+	 * Writes one epoch's worth of values.
+	 *
+	 * @param currentTime
+	 *            - the simulated time the values were taken at
+	 * @param values
+	 *            - the raw (unscaled) value for each AS, in header order, this
+	 *            is not modified or held on to
+	 * @throws IOException
+	 *             - if there is an error writing
+	 */
+	public abstract void writeEpoch(double currentTime, long[] values) throws IOException;
+
+	/**
+	 * Flushes and closes the underlying file.
+	 *
+	 * @throws IOException
+	 *             - if there is an error closing
+	 */
+	public abstract void close() throws IOException;
+}
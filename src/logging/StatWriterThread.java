@@ -0,0 +1,172 @@
+package logging;
+
+import java.io.*;
+import java.util.concurrent.*;
+
+/**
+ * Background thread that does the formatting and disk I/O for the stat logs.
+ * The logger captures each epoch's values into fresh primitive arrays and
+ * hands them over through a bounded queue, so the simulation only stalls on
+ * logging if the writer falls a whole queue's worth of epochs behind.
+ *
+ * @author pendgaft
+ *
+ */
+public class StatWriterThread implements Runnable {
+
+	private StatWriter[] statWriters;
+	private BlockingQueue<StatEpoch> epochQueue;
+	private Thread myThread;
+
+	/**
+	 * First failure the writer hit, reported back on the next call from the
+	 * logger since the writer has nobody to throw it to
+	 */
+	private volatile Throwable failure;
+
+	/**
+	 * Number of epochs that can be waiting to be written
+	 */
+	private static final int QUEUE_DEPTH = 16;
+
+	/**
+	 * How long a hand off waits on a full queue before checking that the
+	 * writer is still alive, in ms
+	 */
+	private static final long ENQUEUE_CHECK_INTERVAL = 1000;
+
+	/**
+	 * One epoch's worth of values for every stat.
+	 */
+	private static class StatEpoch {
+		private double time;
+		private long[][] values;
+		private boolean last;
+
+		private StatEpoch(double time, long[][] values, boolean last) {
+			this.time = time;
+			this.values = values;
+			this.last = last;
+		}
+	}
+
+	/**
+	 * Builds and starts the writer thread. Headers should already be written.
+	 *
+	 * @param writers
+	 *            - the stat writers, epochs must supply values for each in
+	 *            this order
+	 */
+	public StatWriterThread(StatWriter[] writers) {
+		this.statWriters = writers;
+		this.epochQueue = new ArrayBlockingQueue<StatEpoch>(StatWriterThread.QUEUE_DEPTH);
+		this.failure = null;
+
+		this.myThread = new Thread(this);
+		this.myThread.setName("Stat log writer");
+		this.myThread.setDaemon(true);
+		this.myThread.start();
+	}
+
+	/**
+	 * Hands an epoch to the writer, blocking only if the queue is full.
+	 *
+	 * @param time
+	 *            - the simulated time the values were taken at
+	 * @param values
+	 *            - one array per writer, ownership passes to the writer thread
+	 * @throws IOException
+	 *             - if the writer thread has failed
+	 */
+	public void submit(double time, long[][] values) throws IOException {
+		this.checkFailure();
+		this.enqueue(new StatEpoch(time, values, false));
+	}
+
+	/**
+	 * Waits for every submitted epoch to be written and closes the writers.
+	 *
+	 * @throws IOException
+	 *             - if the writer thread failed at any point
+	 */
+	public void finish() throws IOException {
+		this.enqueue(new StatEpoch(0.0, null, true));
+		try {
+			this.myThread.join();
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted waiting on the stat log writer");
+		}
+		this.checkFailure();
+	}
+
+	public void run() {
+		try {
+			while (true) {
+				StatEpoch tEpoch = this.epochQueue.take();
+				if (tEpoch.last) {
+					break;
+				}
+
+				/*
+				 * Once we've failed just drain, the failure is reported back
+				 */
+				if (this.failure != null) {
+					continue;
+				}
+				try {
+					for (int counter = 0; counter < this.statWriters.length; counter++) {
+						this.statWriters[counter].writeEpoch(tEpoch.time, tEpoch.values[counter]);
+					}
+				} catch (IOException e) {
+					this.failure = e;
+				} catch (RuntimeException e) {
+					/*
+					 * A bug in a writer, same deal, if this killed the thread
+					 * the simulation would block forever on a full queue
+					 */
+					this.failure = e;
+				}
+			}
+
+			for (StatWriter tWriter : this.statWriters) {
+				try {
+					tWriter.close();
+				} catch (IOException e) {
+					if (this.failure == null) {
+						this.failure = e;
+					}
+				} catch (RuntimeException e) {
+					if (this.failure == null) {
+						this.failure = e;
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			this.failure = new IOException("Stat log writer interrupted");
+		}
+	}
+
+	/**
+	 * Hands an epoch to the writer, waiting while the queue is full. Gives up
+	 * if the writer fails or dies while we wait, since nobody would ever take
+	 * from the queue again.
+	 */
+	private void enqueue(StatEpoch epoch) throws IOException {
+		try {
+			while (!this.epochQueue.offer(epoch, StatWriterThread.ENQUEUE_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+				this.checkFailure();
+				if (!this.myThread.isAlive()) {
+					throw new IOException("Stat log writer died");
+				}
+			}
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted handing epoch to the stat log writer");
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		if (this.failure != null) {
+			throw new IOException("Stat log writer failed", this.failure);
+		}
+	}
+}
@@ -5,6 +5,7 @@ import java.util.*;
 import bgp.BGPRoute;
 
 import router.BGPSpeaker;
+import util.ParallelWork;
 
 /**
  * Creates one network for each AS that has 1 CIDR inside it. This is used for
@@ -23,9 +24,14 @@ public class EvenSeed extends NetworkSeeder {
 
 	@Override
 	public void initialSeed() {
-		for (BGPSpeaker tAS : this.topoMap.values()) {
-			tAS.selfInstallPath(new BGPRoute(tAS.getASN(), EvenSeed.NET_SIZE));
-		}
+		/*
+		 * Each install only touches the router it's done on, so spread them
+		 */
+		ParallelWork.forEach(new ArrayList<BGPSpeaker>(this.topoMap.values()), new ParallelWork.ItemTask<BGPSpeaker>() {
+			public void process(BGPSpeaker tAS) {
+				tAS.selfInstallPath(new BGPRoute(tAS.getASN(), EvenSeed.NET_SIZE));
+			}
+		}, "Seeder");
 	}
 
 }
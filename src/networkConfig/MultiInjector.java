@@ -1,13 +1,16 @@
 package networkConfig;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 
 import bgp.BGPException;
 import bgp.BGPRoute;
 
 import router.BGPSpeaker;
 import sim.ThunderWolf;
+import util.ParallelWork;
 
 public class MultiInjector extends NetworkSeeder {
 
@@ -32,26 +35,35 @@ public class MultiInjector extends NetworkSeeder {
 	@Override
 	public void initialSeed() {
 
+		/*
+		 * Hand out the blocks of destinations serially so they don't depend
+		 * on thread timing, don't give the targets their own routes
+		 */
+		final List<BGPSpeaker> injectors = new ArrayList<BGPSpeaker>();
+		final HashMap<BGPSpeaker, Integer> firstDest = new HashMap<BGPSpeaker, Integer>();
 		int routeOffset = 0;
-		
 		for (BGPSpeaker tRouter : this.topoMap.values()) {
-			
-			/*
-			 * Don't give the targets their own routes
-			 */
-			if(this.targetASN.contains(tRouter.getASN())){
+			if (this.targetASN.contains(tRouter.getASN())) {
 				continue;
 			}
-			
-			for (int routeCounter = 0; routeCounter < this.numberOfRoutes; routeCounter++) {
-				routeOffset++;
-				BGPRoute tRoute = new BGPRoute(routeOffset, 1);
-				for (int pathCounter = 0; pathCounter < this.pathLen - 1; pathCounter++) {
-					tRoute.appendASToPath(15000 + pathCounter);
-				}
-				tRouter.selfInstallPath(tRoute);
-			}
+			injectors.add(tRouter);
+			firstDest.put(tRouter, routeOffset + 1);
+			routeOffset += this.numberOfRoutes;
 		}
 
+		/*
+		 * Every route shares the one padding path, each router installs its
+		 * own routes in parallel
+		 */
+		final List<Integer> padding = NetworkSeeder.buildPaddingPath(this.pathLen);
+		final int routesPerRouter = this.numberOfRoutes;
+		ParallelWork.forEach(injectors, new ParallelWork.ItemTask<BGPSpeaker>() {
+			public void process(BGPSpeaker tRouter) {
+				int dest = firstDest.get(tRouter);
+				for (int routeCounter = 0; routeCounter < routesPerRouter; routeCounter++) {
+					tRouter.selfInstallPath(new BGPRoute(dest + routeCounter, 1, padding));
+				}
+			}
+		}, "Injector seeder");
 	}
 }
@@ -7,10 +7,32 @@ import router.BGPSpeaker;
 public abstract class NetworkSeeder {
 
 	protected HashMap<Integer, BGPSpeaker> topoMap;
-	
+
+	/**
+	 * First of the made up ASNs used to pad injected paths out to length
+	 */
+	protected static final int PADDING_BASE_ASN = 15000;
+
 	public NetworkSeeder(HashMap<Integer, BGPSpeaker> activeTopo){
 		this.topoMap = activeTopo;
 	}
 	
 	public abstract void initialSeed();
+
+	/**
+	 * Builds the padding path injected routes carry, the same path repeated
+	 * appends of the padding ASNs would give. It is read only so one copy can
+	 * be shared by every injected route.
+	 * 
+	 * @param pathLen
+	 *            - the length of path wanted once the injecting AS adds itself
+	 * @return - the padding path, first hop first
+	 */
+	protected static List<Integer> buildPaddingPath(int pathLen) {
+		LinkedList<Integer> padding = new LinkedList<Integer>();
+		for (int pathCounter = 0; pathCounter < pathLen - 1; pathCounter++) {
+			padding.addFirst(NetworkSeeder.PADDING_BASE_ASN + pathCounter);
+		}
+		return Collections.unmodifiableList(new ArrayList<Integer>(padding));
+	}
 }
@@ -5,6 +5,7 @@ import java.util.*;
 import bgp.BGPRoute;
 import router.AS;
 import router.BGPSpeaker;
+import util.ParallelWork;
 
 /**
  * Class that does realistic seeding of IP blocks. This includes the multiple IP
@@ -24,11 +25,14 @@ public class RealSeeder extends NetworkSeeder {
 	public void initialSeed() {
 		/*
 		 * Handles handing out the correct number of IP blocks that each AS
-		 * owns, assuming of course that those numbers are accurate
+		 * owns, assuming of course that those numbers are accurate, each
+		 * install only touches the router it's done on, so spread them
 		 */
-		for (BGPSpeaker tAS : this.topoMap.values()) {
-			tAS.selfInstallPath(new BGPRoute(tAS.getASN(), tAS.getASObject().getCIDRSize()));
-		}
+		ParallelWork.forEach(new ArrayList<BGPSpeaker>(this.topoMap.values()), new ParallelWork.ItemTask<BGPSpeaker>() {
+			public void process(BGPSpeaker tAS) {
+				tAS.selfInstallPath(new BGPRoute(tAS.getASN(), tAS.getASObject().getCIDRSize()));
+			}
+		}, "Seeder");
 
 		/*
 		 * Now we need to look for all ASes that got dropped from the topology,
@@ -37,13 +37,10 @@ public class SingleInjector extends NetworkSeeder {
 	@Override
 	public void initialSeed() {
 		BGPSpeaker injectorTarget = this.topoMap.get(this.injectingASN);
+		List<Integer> padding = NetworkSeeder.buildPaddingPath(this.pathLen);
 
 		for (int routeCounter = 0; routeCounter < this.numberOfRoutes; routeCounter++) {
-			BGPRoute tRoute = new BGPRoute(routeCounter + 1, 1);
-			for (int pathCounter = 0; pathCounter < this.pathLen - 1; pathCounter++) {
-				tRoute.appendASToPath(15000 + pathCounter);
-			}
-			injectorTarget.selfInstallPath(tRoute);
+			injectorTarget.selfInstallPath(new BGPRoute(routeCounter + 1, 1, padding));
 		}
 
 	}
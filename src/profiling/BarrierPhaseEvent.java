@@ -0,0 +1,50 @@
+package profiling;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event covering one phase of a simulation round, from the driver
+ * releasing the workers to the last of them reporting back. Only phases
+ * slower than the threshold are recorded.
+ *
+ * @author pendgaft
+ *
+ */
+@Name("thunderwolf.BarrierPhase")
+@Label("Barrier Phase")
+@Description("One worker phase of a simulation round, release to barrier")
+@Category({ "ThunderWolf", "Driver" })
+@Threshold("1 ms")
+@StackTrace(false)
+public class BarrierPhaseEvent extends Event {
+
+	@Label("Phase")
+	private String phase;
+
+	@Label("Round")
+	private long round;
+
+	@Label("Simulated Time")
+	@Timespan(Timespan.MILLISECONDS)
+	private long simTime;
+
+	/**
+	 * Ends the event and records it if JFR wants it.
+	 *
+	 * @param phase
+	 *            - the name of the phase
+	 * @param round
+	 *            - the round number
+	 * @param simTime
+	 *            - the simulated time the round advances to
+	 */
+	public void finish(String phase, long round, double simTime) {
+		this.end();
+		if (this.shouldCommit()) {
+			this.phase = phase;
+			this.round = round;
+			this.simTime = (long) simTime;
+			this.commit();
+		}
+	}
+}
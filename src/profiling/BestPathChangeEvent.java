@@ -0,0 +1,57 @@
+package profiling;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event marking a router installing a new best path to a destination.
+ * These fire for almost every update processed, so they are off unless turned
+ * on in the recording's settings (a .jfc with thunderwolf.BestPathChange
+ * enabled).
+ *
+ * @author pendgaft
+ *
+ */
+@Name("thunderwolf.BestPathChange")
+@Label("Best Path Change")
+@Description("A router's best path to a destination changing")
+@Category({ "ThunderWolf", "Router" })
+@Enabled(false)
+@StackTrace(false)
+public class BestPathChangeEvent extends Event {
+
+	@Label("ASN")
+	private int asn;
+
+	@Label("Destination")
+	private int dest;
+
+	@Label("Old Path Length")
+	@Description("-1 if there was no path")
+	private int oldPathLength;
+
+	@Label("New Path Length")
+	@Description("-1 if the destination is now unreachable")
+	private int newPathLength;
+
+	/**
+	 * Records the event if JFR wants it.
+	 *
+	 * @param asn
+	 *            - the router whose best path changed
+	 * @param dest
+	 *            - the destination
+	 * @param oldPathLength
+	 *            - the length of the old best path, -1 if there was none
+	 * @param newPathLength
+	 *            - the length of the new best path, -1 if there is none
+	 */
+	public void record(int asn, int dest, int oldPathLength, int newPathLength) {
+		if (this.shouldCommit()) {
+			this.asn = asn;
+			this.dest = dest;
+			this.oldPathLength = oldPathLength;
+			this.newPathLength = newPathLength;
+			this.commit();
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package profiling;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event covering a stat logging epoch, from the driver setting up the
+ * epoch through the workers gathering their routers' stats to the epoch
+ * being handed to the background writer.
+ *
+ * @author pendgaft
+ *
+ */
+@Name("thunderwolf.LogEpoch")
+@Label("Log Epoch")
+@Description("Gathering one epoch of per router stats")
+@Category({ "ThunderWolf", "Logging" })
+@StackTrace(false)
+public class LogEpochEvent extends Event {
+
+	@Label("Simulated Time")
+	@Timespan(Timespan.MILLISECONDS)
+	private long simTime;
+
+	@Label("Routers")
+	private int routerCount;
+
+	/**
+	 * Ends the event and records it if JFR wants it.
+	 *
+	 * @param simTime
+	 *            - the simulated time of the epoch
+	 * @param routerCount
+	 *            - the number of routers gathered
+	 */
+	public void finish(double simTime, int routerCount) {
+		this.end();
+		if (this.shouldCommit()) {
+			this.simTime = (long) simTime;
+			this.routerCount = routerCount;
+			this.commit();
+		}
+	}
+}
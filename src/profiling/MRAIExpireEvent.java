@@ -0,0 +1,57 @@
+package profiling;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event covering one router's MRAI expiry, i.e. turning its dirty
+ * destinations into updates for its peers. Only expiries slower than the
+ * threshold are recorded.
+ *
+ * @author pendgaft
+ *
+ */
+@Name("thunderwolf.MRAIExpire")
+@Label("MRAI Expire")
+@Description("A router's MRAI timer firing and its updates being built")
+@Category({ "ThunderWolf", "Router" })
+@Threshold("100 us")
+@StackTrace(false)
+public class MRAIExpireEvent extends Event {
+
+	@Label("ASN")
+	private int asn;
+
+	@Label("Dirty Destinations")
+	@Description("Destinations flagged for sending, summed over the peers")
+	private int dirtyDests;
+
+	@Label("Updates Emitted")
+	private int updatesEmitted;
+
+	@Label("Simulated Time")
+	@Timespan(Timespan.MILLISECONDS)
+	private long simTime;
+
+	/**
+	 * Ends the event and records it if JFR wants it.
+	 *
+	 * @param asn
+	 *            - the router whose MRAI fired
+	 * @param dirtyDests
+	 *            - destinations flagged for sending, summed over the peers
+	 * @param updatesEmitted
+	 *            - updates handed to the peers
+	 * @param simTime
+	 *            - the simulated time the MRAI fired at
+	 */
+	public void finish(int asn, int dirtyDests, int updatesEmitted, double simTime) {
+		this.end();
+		if (this.shouldCommit()) {
+			this.asn = asn;
+			this.dirtyDests = dirtyDests;
+			this.updatesEmitted = updatesEmitted;
+			this.simTime = (long) simTime;
+			this.commit();
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package profiling;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event covering the driver's handling of a router finishing a processing
+ * event, which includes working out when that router's next one will finish.
+ * Only completions slower than the threshold are recorded.
+ *
+ * @author pendgaft
+ *
+ */
+@Name("thunderwolf.ProcessComplete")
+@Label("Process Event Complete")
+@Description("A router's processing event completing and being rescheduled")
+@Category({ "ThunderWolf", "Router" })
+@Threshold("100 us")
+@StackTrace(false)
+public class ProcessCompleteEvent extends Event {
+
+	@Label("ASN")
+	private int asn;
+
+	@Label("Pending Updates")
+	@Description("Updates still waiting in the router's incoming queues")
+	private long pendingUpdates;
+
+	@Label("Simulated Time")
+	@Timespan(Timespan.MILLISECONDS)
+	private long simTime;
+
+	/**
+	 * Ends the event and records it if JFR wants it.
+	 *
+	 * @param asn
+	 *            - the router that finished processing
+	 * @param pendingUpdates
+	 *            - updates still waiting on the router
+	 * @param simTime
+	 *            - the simulated time processing finished at
+	 */
+	public void finish(int asn, long pendingUpdates, double simTime) {
+		this.end();
+		if (this.shouldCommit()) {
+			this.asn = asn;
+			this.pendingUpdates = pendingUpdates;
+			this.simTime = (long) simTime;
+			this.commit();
+		}
+	}
+}
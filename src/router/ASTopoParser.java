@@ -4,6 +4,7 @@ import java.util.*;
 import java.io.*;
 
 import events.SimEvent;
+import util.ParallelWork;
 
 /**
  * Class containing a static method for construction of the topology. This class
@@ -20,6 +21,7 @@ public class ASTopoParser {
 	private HashMap<Integer, AS> unprunedTopo;
 	private HashMap<Integer, AS> prunedTopo;
 	private boolean hardFail;
+	private String cacheDir;
 
 	public static void main(String args[]) throws IOException {
 		ASTopoParser test = new ASTopoParser("whole-internet-rel.txt", "whole-internet-ip.txt", true);
@@ -32,9 +34,32 @@ public class ASTopoParser {
 		this.ipCountFileName = ipFile;
 		this.unprunedTopo = null;
 		this.hardFail = simRun;
+		this.cacheDir = null;
 	}
 
-	public HashMap<Integer, AS> getUnpruned() {
+	/**
+	 * Turns on the topology cache (see TopoCache) for network builds.
+	 * 
+	 * @param dir
+	 *            - the directory to keep cache entries in
+	 */
+	public void setCacheDir(String dir) {
+		this.cacheDir = dir;
+	}
+
+	/**
+	 * Fetches the unpruned topology. A network build that hit the topology
+	 * cache never loaded it, so it is loaded here on demand.
+	 * 
+	 * @return - the global unpruned ASN to AS object map
+	 * @throws IOException
+	 *             - if there is an error reading either the relationship or
+	 *             cidr file
+	 */
+	public HashMap<Integer, AS> getUnpruned() throws IOException {
+		if (this.unprunedTopo == null) {
+			this.unprunedTopo = this.loadUnprunedTopo();
+		}
 		return this.unprunedTopo;
 	}
 
@@ -48,25 +73,47 @@ public class ASTopoParser {
 	 *             cidr file
 	 */
 	public HashMap<Integer, BGPSpeaker> doNetworkBuild(int numberOfPrunes) throws IOException {
-		this.unprunedTopo = this.parseFile(this.asRelFileName, this.ipCountFileName);
-		System.out.println("unpruned size: " + this.unprunedTopo.size());
+		/*
+		 * Try the cache first, a hit skips parsing and pruning
+		 */
+		TopoCache cache = null;
+		this.prunedTopo = null;
+		if (this.cacheDir != null) {
+			cache = new TopoCache(this.cacheDir, this.asRelFileName, this.ipCountFileName, numberOfPrunes);
+			this.prunedTopo = cache.load();
+			if (this.prunedTopo != null && numberOfPrunes == 0) {
+				this.unprunedTopo = this.prunedTopo;
+			}
+		}
 
 		/*
 		 * If we are suppose to do a prune of the ASes do it here please
 		 */
-		this.prunedTopo = this.unprunedTopo;
-		for(int counter = 0; counter < numberOfPrunes; counter++){
-			this.prunedTopo = this.doNetworkPrune();
+		if (this.prunedTopo == null) {
+			if (numberOfPrunes > 0) {
+				this.prunedTopo = this.doPruneLevels().materialize(numberOfPrunes);
+			} else {
+				this.unprunedTopo = this.loadUnprunedTopo();
+				this.prunedTopo = this.unprunedTopo;
+			}
+			if (cache != null) {
+				cache.store(this.prunedTopo);
+			}
+		}
+		if (this.unprunedTopo != null) {
+			System.out.println("unpruned size: " + this.unprunedTopo.size());
 		}
 		System.out.println("pruned size: " + this.prunedTopo.size());
 
 		/*
-		 * Build the actual routers, pass a reference to the router map itself
+		 * Draw the opening MRAI values up front, serially, so the RNG and the
+		 * uniqueness check stay single threaded
 		 */
-		HashMap<Integer, BGPSpeaker> routerMap = new HashMap<Integer, BGPSpeaker>();
-		HashSet<Double> mraiUnique = new HashSet<Double>();
+		final List<AS> asList = new ArrayList<AS>(this.prunedTopo.values());
+		final double[] openingMRAIs = new double[asList.size()];
+		HashSet<Double> mraiUnique = new HashSet<Double>(asList.size() * 4 / 3 + 1);
 		Random rng = new Random();
-		for (AS tAS : this.prunedTopo.values()) {
+		for (int counter = 0; counter < asList.size(); counter++) {
 			double jitter;
 			double mraiValue = 0;
 			while (mraiValue == 0) {
@@ -80,15 +127,104 @@ public class ASTopoParser {
 				}
 			}
 			mraiUnique.add(mraiValue);
-			routerMap.put(tAS.getASN(), new BGPSpeaker(tAS, routerMap, mraiValue));
+			openingMRAIs[counter] = mraiValue;
 		}
-		for (BGPSpeaker tSpeaker : routerMap.values()) {
-			tSpeaker.setupSharedQueues();
+
+		/*
+		 * Build the actual routers in parallel, pass a reference to the router
+		 * map itself, the speakers don't look at it until they're wired up.
+		 * Each thread fills its own slots of the array, the map is filled after
+		 * the build barrier.
+		 */
+		long start = System.currentTimeMillis();
+		final HashMap<Integer, BGPSpeaker> routerMap = new HashMap<Integer, BGPSpeaker>(asList.size() * 4 / 3 + 1);
+		final BGPSpeaker[] builtSpeakers = new BGPSpeaker[asList.size()];
+		List<Integer> slots = new ArrayList<Integer>(asList.size());
+		for (int counter = 0; counter < asList.size(); counter++) {
+			slots.add(counter);
+		}
+		ParallelWork.forEach(slots, new ParallelWork.ItemTask<Integer>() {
+			public void process(Integer slot) {
+				builtSpeakers[slot] = new BGPSpeaker(asList.get(slot), routerMap, openingMRAIs[slot]);
+			}
+		}, "Router builder");
+		for (BGPSpeaker tSpeaker : builtSpeakers) {
+			routerMap.put(tSpeaker.getASN(), tSpeaker);
 		}
 
+		/*
+		 * Wire the queues in two phases, every speaker builds its outgoing
+		 * queues, then every speaker adopts its peers' queues to it as its
+		 * incoming queues, each phase only modifies the speaker it's handed
+		 */
+		List<BGPSpeaker> speakerList = Arrays.asList(builtSpeakers);
+		ParallelWork.forEach(speakerList, new ParallelWork.ItemTask<BGPSpeaker>() {
+			public void process(BGPSpeaker speaker) {
+				speaker.setupOutgoingQueues();
+			}
+		}, "Queue builder");
+		ParallelWork.forEach(speakerList, new ParallelWork.ItemTask<BGPSpeaker>() {
+			public void process(BGPSpeaker speaker) {
+				speaker.attachIncomingQueues();
+			}
+		}, "Queue wiring");
+		System.out.println("Routers built in: " + (System.currentTimeMillis() - start) + " ms.");
+
 		return routerMap;
 	}
 
+	/**
+	 * Loads the unpruned topology and runs the single pass pruning over it.
+	 * The returned pruner can materialize any prune depth, which lets callers
+	 * build several levels without reparsing or repruning.
+	 * 
+	 * @return - the pruner for the unpruned topology
+	 * @throws IOException
+	 *             - if there is an error reading either the relationship or
+	 *             cidr file
+	 */
+	public TopoPruner doPruneLevels() throws IOException {
+		this.unprunedTopo = this.loadUnprunedTopo();
+		long start = System.currentTimeMillis();
+		TopoPruner pruner = new TopoPruner(this.unprunedTopo);
+		System.out.println("Prune levels computed in: " + (System.currentTimeMillis() - start) + " ms.");
+		return pruner;
+	}
+
+	/**
+	 * Loads the unpruned topology, from the compiled snapshot (see
+	 * TopoSnapshot) if one exists that was built from the current text files,
+	 * otherwise by parsing the text files.
+	 * 
+	 * @return - the global ASN to AS object map
+	 * @throws IOException
+	 *             - if there is an issue reading the snapshot or text files
+	 */
+	private HashMap<Integer, AS> loadUnprunedTopo() throws IOException {
+		String snapFile = TopoSnapshot.defaultSnapshotName(this.asRelFileName);
+		if (TopoSnapshot.isFresh(snapFile, this.asRelFileName, this.ipCountFileName)) {
+			long start = System.currentTimeMillis();
+			HashMap<Integer, AS> retMap = TopoSnapshot.read(snapFile);
+			System.out.println("Topology snapshot " + snapFile + " loaded in: " + (System.currentTimeMillis() - start)
+					+ " ms.");
+			return retMap;
+		}
+
+		return this.parseTextFiles();
+	}
+
+	/**
+	 * Parses the text relationship and cidr count files, ignoring any
+	 * snapshot. Used by the snapshot compiler.
+	 * 
+	 * @return - the global ASN to AS object map
+	 * @throws IOException
+	 *             - if there is an issue reading from either file
+	 */
+	HashMap<Integer, AS> parseTextFiles() throws IOException {
+		return this.parseFile(this.asRelFileName, this.ipCountFileName);
+	}
+
 	/**
 	 * Static function that does the actual parsing of two files to generate the
 	 * AS level topology we're going to use.
@@ -103,88 +239,57 @@ public class ASTopoParser {
 	 *             - if there is an issue reading from either file
 	 */
 	private HashMap<Integer, AS> parseFile(String asRelFile, String cidrCountFile) throws IOException {
-
-		HashMap<Integer, AS> retMap = new HashMap<Integer, AS>();
+		long start = System.currentTimeMillis();
 		int noCIDRCount = 0;
 
-		String pollString;
-		StringTokenizer pollToks;
-		int lhsASN, rhsASN, rel;
-		BufferedReader fBuff = null;
-
 		/*
-		 * Parse the cidr count file and use it to create the AS objects
+		 * Scan both files straight into primitive columns, the cidr count file
+		 * is of the form <ASN> <CIDR COUNT>, the relationship file is
+		 * <ASN>|<ASN>|<REL>
 		 */
 		//TODO make this work with new format...
+		int[][] cidrCols = null;
 		if (cidrCountFile != null) {
-			fBuff = new BufferedReader(new FileReader(cidrCountFile));
-			while (fBuff.ready()) {
-				pollString = fBuff.readLine().trim();
-
-				/*
-				 * ignore blanks
-				 */
-				if (pollString.length() == 0) {
-					continue;
-				}
-
-				/*
-				 * Ignore comments
-				 */
-				if (pollString.charAt(0) == '#') {
-					continue;
-				}
-
-				/*
-				 * Tokenize and go, the file is of the form <ASN> <CIDR COUNT>
-				 */
-				StringTokenizer tokens = new StringTokenizer(pollString, " ");
-				int asn = Integer.parseInt(tokens.nextToken());
-				retMap.put(asn, new AS(asn, Integer.parseInt(tokens.nextToken())));
-			}
-			fBuff.close();
+			cidrCols = TopoFileScanner.scanFile(cidrCountFile, 2, ' ');
 		}
+		int[][] relCols = TopoFileScanner.scanFile(asRelFile, 3, '|');
+		int[] lhsCol = relCols[0];
+		int[] rhsCol = relCols[1];
+		int[] relCol = relCols[2];
 
 		/*
-		 * Parse the relationship file and fill in accordingly
+		 * Use the cidr counts to create the AS objects
 		 */
-		fBuff = new BufferedReader(new FileReader(asRelFile));
-		while (fBuff.ready()) {
-			pollString = fBuff.readLine().trim();
-
-			/*
-			 * ignore blanks
-			 */
-			if (pollString.length() == 0) {
-				continue;
-			}
-
-			/*
-			 * Ignore comments
-			 */
-			if (pollString.charAt(0) == '#') {
-				continue;
+		int expectedSize = (cidrCols == null ? 0 : cidrCols[0].length) + relCols[0].length / 4;
+		HashMap<Integer, AS> retMap = new HashMap<Integer, AS>(expectedSize * 4 / 3 + 1);
+		if (cidrCols != null) {
+			for (int counter = 0; counter < cidrCols[0].length; counter++) {
+				retMap.put(cidrCols[0][counter], new AS(cidrCols[0][counter], cidrCols[1][counter]));
 			}
+		}
 
-			/*
-			 * Read the ASNs and relations
-			 */
-			pollToks = new StringTokenizer(pollString, "|");
-			lhsASN = Integer.parseInt(pollToks.nextToken());
-			rhsASN = Integer.parseInt(pollToks.nextToken());
-			rel = Integer.parseInt(pollToks.nextToken());
+		/*
+		 * Fill in the relationships
+		 */
+		for (int counter = 0; counter < lhsCol.length; counter++) {
+			int lhsASN = lhsCol[counter];
+			int rhsASN = rhsCol[counter];
 
 			/*
 			 * Check if the AS object was not created in the process of parsing
 			 * the CIDR count file, if not, add the AS and give it a single
 			 * network
 			 */
-			if (!retMap.containsKey(lhsASN)) {
-				retMap.put(lhsASN, new AS(lhsASN, 1));
+			AS lhsAS = retMap.get(lhsASN);
+			if (lhsAS == null) {
+				lhsAS = new AS(lhsASN, 1);
+				retMap.put(lhsASN, lhsAS);
 				noCIDRCount++;
 			}
-			if (!retMap.containsKey(rhsASN)) {
-				retMap.put(rhsASN, new AS(rhsASN, 1));
+			AS rhsAS = retMap.get(rhsASN);
+			if (rhsAS == null) {
+				rhsAS = new AS(rhsASN, 1);
+				retMap.put(rhsASN, rhsAS);
 				noCIDRCount++;
 			}
 
@@ -192,63 +297,12 @@ public class ASTopoParser {
 			 * Actually add the relation, we only need to call this for one
 			 * object and it handles symmetry enforcement
 			 */
-			retMap.get(lhsASN).addParsedRelation(retMap.get(rhsASN), rel);
+			lhsAS.addParsedRelation(rhsAS, relCol[counter]);
 		}
-		fBuff.close();
 
 		System.out.println("ASes without CIDR mapping: " + noCIDRCount);
+		System.out.println("Topology files parsed in: " + (System.currentTimeMillis() - start) + " ms.");
 
 		return retMap;
 	}
-
-	private HashMap<Integer, AS> doNetworkPrune() {
-		HashMap<Integer, AS> prunedMap = new HashMap<Integer, AS>();
-
-		int counter = 0;
-		for (AS tAS : this.prunedTopo.values()) {
-			if (tAS.getCustomers().size() > 0) {
-				counter++;
-				prunedMap.put(tAS.getASN(), new AS(tAS.getASN(), tAS.getCIDRSize()));
-			}
-		}
-		System.out.println("counter size: " + counter);
-
-		/*
-		 * Build the relations for the deep copy objects
-		 */
-		for (AS newAS : prunedMap.values()) {
-			AS oldAS = this.prunedTopo.get(newAS.getASN());
-
-			/*
-			 * Populate providers, this will all exist by default since they
-			 * can't be pruned by definition
-			 */
-			for (Integer provASN : oldAS.getProviders()) {
-				newAS.addProvider(prunedMap.get(provASN));
-			}
-
-			/*
-			 * Do the same with peers and customers, but we do need to ensure
-			 * here that they exist in the topology
-			 */
-			for (Integer peerASN : oldAS.getPeers()) {
-				if (!prunedMap.containsKey(peerASN)) {
-					continue;
-				}
-				newAS.addPeer(prunedMap.get(peerASN));
-			}
-			for (Integer custASN : oldAS.getCustomers()) {
-				if (!prunedMap.containsKey(custASN)) {
-					/*
-					 * If the AS has been pruned, roll the CIDRs up to the parent
-					 */
-					newAS.setCIDRSize(newAS.getCIDRSize() + this.prunedTopo.get(custASN).getCIDRSize());
-					continue;
-				}
-				newAS.addCustomer(prunedMap.get(custASN));
-			}
-		}
-
-		return prunedMap;
-	}
 }
@@ -0,0 +1,209 @@
+package router;
+
+import java.util.*;
+
+import bgp.BGPRoute;
+
+/**
+ * Compact Adj-RIB-Out for a single BGP speaker. Peers are given dense indices,
+ * and for each destination we keep two bitmaps over those indices, which peers
+ * currently hold a route from us, and which of those hold the last route we
+ * advertised for the destination. That is enough to know when a withdrawal is
+ * owed, and to skip re-advertising a path a peer already has.
+ *
+ * @author pendgaft
+ *
+ */
+public class AdjRibOut {
+
+	/**
+	 * Sorted ASNs of our peers, a peer's position in this array is its index
+	 */
+	private int[] peerASNs;
+	private int bitmapWords;
+
+	private HashMap<Integer, DestEntry> entries;
+
+	/**
+	 * State held for one destination.
+	 */
+	private static class DestEntry {
+		private BGPRoute lastAdvertised;
+		private long[] advertisedTo;
+		private long[] holdsLast;
+
+		private DestEntry(int words) {
+			this.lastAdvertised = null;
+			this.advertisedTo = new long[words];
+			this.holdsLast = new long[words];
+		}
+	}
+
+	/**
+	 * Builds an empty Adj-RIB-Out for a speaker with the given peers.
+	 *
+	 * @param neighbors
+	 *            - the ASNs of all of the speaker's peers
+	 */
+	public AdjRibOut(Set<Integer> neighbors) {
+		this.peerASNs = new int[neighbors.size()];
+		int pos = 0;
+		for (int tASN : neighbors) {
+			this.peerASNs[pos] = tASN;
+			pos++;
+		}
+		Arrays.sort(this.peerASNs);
+
+		this.bitmapWords = Math.max(1, (this.peerASNs.length + 63) / 64);
+		this.entries = new HashMap<Integer, DestEntry>();
+	}
+
+	/**
+	 * Fetches the dense index for a peer.
+	 *
+	 * @param peerASN
+	 *            - the ASN of the peer
+	 * @return - the peer's index, used by the other calls in this class
+	 */
+	public int getPeerIndex(int peerASN) {
+		int index = Arrays.binarySearch(this.peerASNs, peerASN);
+		if (index < 0) {
+			throw new IllegalArgumentException("ASN " + peerASN + " is not a peer.");
+		}
+		return index;
+	}
+
+	/**
+	 * Predicate to test if a peer currently holds any route from us for a
+	 * destination, i.e. if losing the route means we owe them a withdrawal.
+	 *
+	 * @param dest
+	 *            - the destination network
+	 * @param peerIndex
+	 *            - the peer's dense index
+	 * @return - true if the peer has been sent a route that it was not since
+	 *         told to withdraw
+	 */
+	public boolean wasAdvertised(int dest, int peerIndex) {
+		DestEntry entry = this.entries.get(dest);
+		return entry != null && AdjRibOut.testBit(entry.advertisedTo, peerIndex);
+	}
+
+	/**
+	 * Predicate to test if a peer already holds exactly this route from us, in
+	 * which case advertising it again is pointless.
+	 *
+	 * @param dest
+	 *            - the destination network
+	 * @param peerIndex
+	 *            - the peer's dense index
+	 * @param route
+	 *            - the route we want to advertise
+	 * @return - true if the last route the peer was sent has the same path
+	 */
+	public boolean holdsRoute(int dest, int peerIndex, BGPRoute route) {
+		DestEntry entry = this.entries.get(dest);
+		return entry != null && AdjRibOut.testBit(entry.holdsLast, peerIndex) && route.equals(entry.lastAdvertised);
+	}
+
+	/**
+	 * Fetches the last route we advertised for a destination to anyone.
+	 *
+	 * @param dest
+	 *            - the destination network
+	 * @return - the last route advertised, null if we hold no advertisement
+	 *         state for the destination
+	 */
+	public BGPRoute getLastAdvertised(int dest) {
+		DestEntry entry = this.entries.get(dest);
+		if (entry == null) {
+			return null;
+		}
+		return entry.lastAdvertised;
+	}
+
+	/**
+	 * Records that a route was advertised to a peer.
+	 *
+	 * @param dest
+	 *            - the destination network
+	 * @param peerIndex
+	 *            - the peer's dense index
+	 * @param route
+	 *            - the route sent
+	 */
+	public void recordAdvertisement(int dest, int peerIndex, BGPRoute route) {
+		DestEntry entry = this.entries.get(dest);
+		if (entry == null) {
+			entry = new DestEntry(this.bitmapWords);
+			this.entries.put(dest, entry);
+		}
+
+		/*
+		 * A new path means nobody holds the last path anymore
+		 */
+		if (!route.equals(entry.lastAdvertised)) {
+			entry.lastAdvertised = route;
+			Arrays.fill(entry.holdsLast, 0L);
+		}
+
+		AdjRibOut.setBit(entry.advertisedTo, peerIndex);
+		AdjRibOut.setBit(entry.holdsLast, peerIndex);
+	}
+
+	/**
+	 * Records that a peer was sent an explicit withdrawal, dropping state for
+	 * the destination entirely once no peer holds a route.
+	 *
+	 * @param dest
+	 *            - the destination network
+	 * @param peerIndex
+	 *            - the peer's dense index
+	 */
+	public void recordWithdrawal(int dest, int peerIndex) {
+		DestEntry entry = this.entries.get(dest);
+		if (entry == null) {
+			return;
+		}
+
+		AdjRibOut.clearBit(entry.advertisedTo, peerIndex);
+		AdjRibOut.clearBit(entry.holdsLast, peerIndex);
+		for (long tWord : entry.advertisedTo) {
+			if (tWord != 0L) {
+				return;
+			}
+		}
+		this.entries.remove(dest);
+	}
+
+	/**
+	 * Charges this Adj-RIB-Out to a heap footprint estimate, the last route
+	 * advertised for each destination is normally the out RIB's route, so
+	 * is only charged if the out RIB has let go of it.
+	 *
+	 * @param footprint
+	 *            - the estimate to charge
+	 */
+	public void measureHeap(HeapFootprint footprint) {
+		long bytes = HeapFootprint.objectSize(2, 4) + HeapFootprint.arraySize(this.peerASNs.length, 4);
+		long entryBytes = HeapFootprint.objectSize(3, 0) + 2 * HeapFootprint.arraySize(this.bitmapWords, 8);
+		bytes += this.entries.size() * entryBytes;
+		footprint.charge(HeapFootprint.ADJ_RIB_OUT, bytes);
+		footprint.chargeMap(HeapFootprint.ADJ_RIB_OUT, this.entries);
+		for (DestEntry tEntry : this.entries.values()) {
+			footprint.chargeRoute(HeapFootprint.ADJ_RIB_OUT, tEntry.lastAdvertised);
+		}
+	}
+
+	private static boolean testBit(long[] bitmap, int index) {
+		return (bitmap[index >>> 6] & (1L << index)) != 0L;
+	}
+
+	private static void setBit(long[] bitmap, int index) {
+		bitmap[index >>> 6] |= (1L << index);
+	}
+
+	private static void clearBit(long[] bitmap, int index) {
+		bitmap[index >>> 6] &= ~(1L << index);
+	}
+}
@@ -5,6 +5,9 @@ import java.util.*;
 import events.*;
 import bgp.BGPRoute;
 import bgp.BGPUpdate;
+import bgp.UpdatePacker;
+import profiling.BestPathChangeEvent;
+import profiling.MRAIExpireEvent;
 
 /**
  * Class that deals with the actual BGP processing, along with update queue
@@ -23,19 +26,50 @@ public class BGPSpeaker {
 	private HashMap<Integer, HashMap<Integer, BGPRoute>> adjInRib;
 	private HashMap<Integer, List<BGPRoute>> inRib;
 	private HashMap<Integer, BGPRoute> outRib;
-	private HashMap<Integer, Set<BGPSpeaker>> adjOutRib;
+	private AdjRibOut adjOutRib;
 
 	private HashMap<Integer, BGPRoute> locRib;
 	private HashMap<Integer, BGPUpdate> locRibDependents;
 
 	private HashMap<Integer, HashSet<Integer>> dirtyDests;
+	private UpdatePacker updatePacker;
 
 	private HashMap<Integer, LinkedList<BGPUpdate>> incUpdateQueues;
 	private HashMap<Integer, LinkedList<BGPUpdate>> outgoingUpdateQueues;
+
+	/*
+	 * For each peer, which queued update is carrying each destination, only
+	 * holds updates the peer has not started on yet
+	 */
+	private HashMap<Integer, HashMap<Integer, BGPUpdate>> unsentUpdates;
 	private double nextMRAI;
+	private MRAIFireEvent mraiEvent;
+
+	/*
+	 * The process event is owned by this speaker for the life of the
+	 * simulation, nextProcessTime is where we want it to be, the event queue
+	 * moves the event itself there
+	 */
 	private ProcessEvent nextProcessEvent;
+	private double nextProcessTime;
 	private int nextProcessQueue;
 
+	/*
+	 * Running totals kept up to date as routes enter/leave the in RIB and as
+	 * updates are queued to/finished by this speaker, so logging doesn't need
+	 * to walk the RIB or the queues
+	 */
+	private long inRibMemLoad;
+	private int inRibRouteCount;
+	private long pendingUpdateCount;
+	private double lastUpdateDoneTime;
+
+	/*
+	 * Per speaker cost accounting, null unless COST_ACCOUNTING was on when
+	 * the speaker was built
+	 */
+	private SpeakerCounters costCounters;
+
 	private boolean isConfederation;
 	private HashMap<Integer, HashSet<Integer>> routerBindings = null;
 	private HashMap<Integer, Integer> asToRouterGroup = null;
@@ -45,6 +79,12 @@ public class BGPSpeaker {
 
 	private static final int MAX_ROUTER_SIZE = 8;
 
+	/**
+	 * Turns on the per speaker cost counters, must be set before the
+	 * speakers are built
+	 */
+	public static boolean COST_ACCOUNTING = false;
+
 	/**
 	 * Constructor which sets up a BGP speaker.
 	 * 
@@ -58,43 +98,63 @@ public class BGPSpeaker {
 		this.myAS = asObj;
 		this.peers = routerMap;
 
-		this.adjInRib = new HashMap<Integer, HashMap<Integer, BGPRoute>>();
+		/*
+		 * Size the per peer maps up front, the AS's neighbor set is computed
+		 * fresh on every call so only fetch it once
+		 */
+		Set<Integer> neighbors = this.myAS.getNeighbors();
+		int peerMapSize = (neighbors.size() + 1) * 4 / 3 + 1;
+
+		this.adjInRib = new HashMap<Integer, HashMap<Integer, BGPRoute>>(peerMapSize);
 		this.inRib = new HashMap<Integer, List<BGPRoute>>();
 		this.outRib = new HashMap<Integer, BGPRoute>();
-		this.adjOutRib = new HashMap<Integer, Set<BGPSpeaker>>();
+		this.adjOutRib = new AdjRibOut(neighbors);
 		this.locRib = new HashMap<Integer, BGPRoute>();
 		this.locRibDependents = new HashMap<Integer, BGPUpdate>();
 
-		this.incUpdateQueues = new HashMap<Integer, LinkedList<BGPUpdate>>();
-		this.outgoingUpdateQueues = new HashMap<Integer, LinkedList<BGPUpdate>>();
-		this.dirtyDests = new HashMap<Integer, HashSet<Integer>>();
+		this.incUpdateQueues = new HashMap<Integer, LinkedList<BGPUpdate>>(peerMapSize);
+		this.outgoingUpdateQueues = new HashMap<Integer, LinkedList<BGPUpdate>>(peerMapSize);
+		this.unsentUpdates = new HashMap<Integer, HashMap<Integer, BGPUpdate>>(peerMapSize);
+		this.dirtyDests = new HashMap<Integer, HashSet<Integer>>(peerMapSize);
+		this.updatePacker = new UpdatePacker(this.getASN());
 
 		/*
 		 * Setup the queues, including the odd "internal" queue
 		 */
-		for (int tASN : this.myAS.getNeighbors()) {
+		for (int tASN : neighbors) {
 			this.dirtyDests.put(tASN, new HashSet<Integer>());
 		}
 		this.incUpdateQueues.put(this.getASN(), new LinkedList<BGPUpdate>());
 		this.nextMRAI = openingMRAI;
-		this.nextProcessEvent = new ProcessEvent(Long.MAX_VALUE, this);
+		this.mraiEvent = new MRAIFireEvent(this.nextMRAI, this);
+		this.nextProcessTime = Long.MAX_VALUE;
+		this.nextProcessEvent = new ProcessEvent(this.nextProcessTime, this);
 		this.nextProcessQueue = -1;
 
+		this.inRibMemLoad = 0;
+		this.inRibRouteCount = 0;
+		this.pendingUpdateCount = 0;
+		this.lastUpdateDoneTime = 0.0;
+		if (BGPSpeaker.COST_ACCOUNTING) {
+			this.costCounters = new SpeakerCounters();
+		} else {
+			this.costCounters = null;
+		}
+
 		/*
 		 * Deal with confederations of routers if we need to
 		 */
-		this.isConfederation = (this.myAS.getNeighbors().size() <= BGPSpeaker.MAX_ROUTER_SIZE);
+		this.isConfederation = (neighbors.size() <= BGPSpeaker.MAX_ROUTER_SIZE);
 		if (this.isConfederation) {
 			this.routerBindings = new HashMap<Integer, HashSet<Integer>>();
-			this.asToRouterGroup = new HashMap<Integer, Integer>();
-			int numberOfRouters = (int) Math.ceil((double) this.myAS.getNeighbors().size()
-					/ (double) BGPSpeaker.MAX_ROUTER_SIZE);
+			this.asToRouterGroup = new HashMap<Integer, Integer>(peerMapSize);
+			int numberOfRouters = (int) Math.ceil((double) neighbors.size() / (double) BGPSpeaker.MAX_ROUTER_SIZE);
 			for (int counter = 0; counter < numberOfRouters; counter++) {
 				this.routerBindings.put(counter, new HashSet<Integer>());
 			}
 
 			int pos = 0;
-			for (int tASN : this.myAS.getNeighbors()) {
+			for (int tASN : neighbors) {
 				this.routerBindings.get(pos).add(tASN);
 				this.asToRouterGroup.put(tASN, pos);
 				pos++;
@@ -103,11 +163,31 @@ public class BGPSpeaker {
 		}
 	}
 
-	public void setupSharedQueues() {
-		for (int tASN : this.myAS.getNeighbors()) {
-			LinkedList<BGPUpdate> myQueueToHim = new LinkedList<BGPUpdate>();
-			this.outgoingUpdateQueues.put(tASN, myQueueToHim);
-			this.peers.get(tASN).incUpdateQueues.put(this.myAS.getASN(), myQueueToHim);
+	/**
+	 * First half of wiring the speakers together, builds the queues this
+	 * speaker sends to each of its peers on. This only touches this speaker's
+	 * own state, so every speaker can do it at once.
+	 */
+	public void setupOutgoingQueues() {
+		/*
+		 * dirtyDests is keyed by exactly our neighbors, cheaper than
+		 * rebuilding the AS's neighbor set
+		 */
+		for (int tASN : this.dirtyDests.keySet()) {
+			this.outgoingUpdateQueues.put(tASN, new LinkedList<BGPUpdate>());
+			this.unsentUpdates.put(tASN, new HashMap<Integer, BGPUpdate>());
+		}
+	}
+
+	/**
+	 * Second half of wiring the speakers together, adopts each peer's
+	 * outgoing queue to us as our incoming queue from them. Every speaker must
+	 * have finished setupOutgoingQueues first. Only this speaker's own state
+	 * is modified, peers are only read, so every speaker can do it at once.
+	 */
+	public void attachIncomingQueues() {
+		for (int tASN : this.dirtyDests.keySet()) {
+			this.incUpdateQueues.put(tASN, this.peers.get(tASN).outgoingUpdateQueues.get(this.myAS.getASN()));
 		}
 	}
 
@@ -117,9 +197,9 @@ public class BGPSpeaker {
 	 * immediately. This handles the removal of routes, calculation of best
 	 * paths, tolerates the loss of all routes, etc. It marks routes as dirty,
 	 * but does not send advertisements, as that is handled at the time of MRAI
-	 * expiration.
+	 * expiration. Package visible for BenchHook.
 	 */
-	private void handleAdvertisement(BGPUpdate nextUpdate) {
+	void handleAdvertisement(BGPUpdate nextUpdate) {
 		if (DEBUG) {
 			System.out.println("handling " + this.getASN());
 		}
@@ -132,63 +212,180 @@ public class BGPSpeaker {
 		}
 
 		/*
-		 * Fetch some fields in the correct form
+		 * Fetch the peer, for advertisements every route shares one path, so
+		 * the first route tells us both the peer and if the path loops
 		 */
-		int advPeer, dest;
+		int advPeer;
+		boolean loops = false;
 		if (nextUpdate.isWithdrawal()) {
 			advPeer = nextUpdate.getWithdrawer();
-			dest = nextUpdate.getWithdrawnDest();
 		} else {
-			advPeer = nextUpdate.getAdvertisedRoute().getNextHop(this.getASN());
-			dest = nextUpdate.getAdvertisedRoute().getDest();
+			advPeer = nextUpdate.getAdvertisedRoute(0).getNextHop(this.getASN());
+			loops = nextUpdate.getAdvertisedRoute(0).containsLoop(this.getASN());
 		}
 
 		/*
-		 * Setup some objects if this the first time seeing a peer/dest
+		 * Setup some objects if this the first time seeing a peer
 		 */
-		if (this.adjInRib.get(advPeer) == null) {
-			this.adjInRib.put(advPeer, new HashMap<Integer, BGPRoute>());
-		}
-		if (this.inRib.get(dest) == null) {
-			this.inRib.put(dest, new ArrayList<BGPRoute>());
+		HashMap<Integer, BGPRoute> advRibList = this.adjInRib.get(advPeer);
+		if (advRibList == null) {
+			advRibList = new HashMap<Integer, BGPRoute>();
+			this.adjInRib.put(advPeer, advRibList);
 		}
 
 		/*
-		 * Hunt for an existing route in the adjInRib. If it's a withdrawal we
-		 * want to remove it, and if it is an adv and a route already exists we
-		 * then have an implicit withdrawal
+		 * Handle each destination packed in the update as its own route change
 		 */
-		boolean routeRemoved = false;
-		HashMap<Integer, BGPRoute> advRibList = this.adjInRib.get(advPeer);
-		if (advRibList.containsKey(dest)) {
-			advRibList.remove(dest);
-			routeRemoved = true;
+		for (int counter = 0; counter < nextUpdate.getDestCount(); counter++) {
+			int dest = nextUpdate.getDest(counter);
+			BGPRoute advRoute = null;
+			if (!nextUpdate.isWithdrawal() && !loops) {
+				advRoute = nextUpdate.getAdvertisedRoute(counter);
+			}
+
+			this.handleRouteChange(advPeer, dest, advRoute, advRibList);
+			if (this.costCounters != null) {
+				this.costCounters.countBestPathRecalc();
+			}
+			if (this.recalcBestPath(dest)) {
+				this.locRibDependents.put(dest, nextUpdate);
+			}
 		}
+	}
 
+	/**
+	 * Applies one destination's worth of an update to the adj in RIB and in
+	 * RIB. Removes any existing route from the peer (explicit or implicit
+	 * withdrawal) and installs the new route if there is one.
+	 * 
+	 * @param advPeer
+	 *            - the peer the update came from
+	 * @param dest
+	 *            - the destination that changed
+	 * @param advRoute
+	 *            - the new route, null if this is a withdrawal or the route
+	 *            loops
+	 * @param advRibList
+	 *            - the adj in RIB for the peer
+	 */
+	private void handleRouteChange(int advPeer, int dest, BGPRoute advRoute, HashMap<Integer, BGPRoute> advRibList) {
 		/*
-		 * If there was a rotue to remove from the adjInRib, clean up the inRib
-		 * as well
+		 * Setup some objects if this the first time seeing a dest
 		 */
 		List<BGPRoute> destRibList = this.inRib.get(dest);
-		if (routeRemoved) {
+		if (destRibList == null) {
+			destRibList = new ArrayList<BGPRoute>();
+			this.inRib.put(dest, destRibList);
+		}
+
+		/*
+		 * Hunt for an existing route in the adjInRib. If it's a withdrawal we
+		 * want to remove it, and if it is an adv and a route already exists we
+		 * then have an implicit withdrawal. If there was a rotue to remove
+		 * from the adjInRib, clean up the inRib as well
+		 */
+		if (advRibList.remove(dest) != null) {
 			for (int counter = 0; counter < destRibList.size(); counter++) {
 				if (destRibList.get(counter).getNextHop(this.getASN()) == advPeer) {
-					destRibList.remove(counter);
+					this.untallyInRibRoute(destRibList.remove(counter));
 					break;
 				}
 			}
 		}
 
+		if (advRoute != null) {
+			advRibList.put(dest, advRoute);
+			destRibList.add(advRoute);
+			this.tallyInRibRoute(advRoute);
+		}
+	}
+
+	/**
+	 * Adds a route that just entered the in RIB to the running RIB totals.
+	 * 
+	 * @param addedRoute
+	 *            - the route added to the in RIB
+	 */
+	private void tallyInRibRoute(BGPRoute addedRoute) {
+		this.inRibMemLoad += BGPSpeaker.computeRouteMemLoad(addedRoute);
+		this.inRibRouteCount += addedRoute.getSize();
+	}
+
+	/**
+	 * Removes a route that just left the in RIB from the running RIB totals.
+	 * 
+	 * @param removedRoute
+	 *            - the route removed from the in RIB
+	 */
+	private void untallyInRibRoute(BGPRoute removedRoute) {
+		this.inRibMemLoad -= BGPSpeaker.computeRouteMemLoad(removedRoute);
+		this.inRibRouteCount -= removedRoute.getSize();
+	}
+
+	/**
+	 * Model of how much memory a real router needs to hold a route in its RIB.
+	 * 
+	 * @param theRoute
+	 *            - the route being held
+	 * @return - the memory the route consumes in bytes
+	 */
+	private static long computeRouteMemLoad(BGPRoute theRoute) {
+		return (theRoute.getPathLength() * 15) + (405 * theRoute.getSize());
+	}
+
+	/**
+	 * Places an update on the outgoing queue to the given peer, keeping the
+	 * peer's count of pending work current.
+	 * 
+	 * @param peer
+	 *            - the ASN of the peer the update is going to
+	 * @param outUpdate
+	 *            - the update being sent
+	 */
+	private void enqueueUpdate(int peer, BGPUpdate outUpdate) {
+		BGPSpeaker peerSpeaker = this.peers.get(peer);
+		this.outgoingUpdateQueues.get(peer).add(outUpdate);
+		peerSpeaker.pendingUpdateCount++;
+		if (peerSpeaker.costCounters != null) {
+			peerSpeaker.costCounters.noteQueueDepth(peerSpeaker.pendingUpdateCount);
+		}
+
 		/*
-		 * If it is a loop don't add it to ribs
+		 * Any destination in this update that is still waiting in the queue
+		 * in an older update is stale, pull it out of the older update so the
+		 * peer never processes it (implicit withdrawal collapse)
 		 */
-		if ((!nextUpdate.isWithdrawal()) && (!nextUpdate.getAdvertisedRoute().containsLoop(this.getASN()))) {
-			advRibList.put(nextUpdate.getAdvertisedRoute().getDest(), nextUpdate.getAdvertisedRoute());
-			destRibList.add(nextUpdate.getAdvertisedRoute());
+		HashMap<Integer, BGPUpdate> unsentToPeer = this.unsentUpdates.get(peer);
+		for (int counter = 0; counter < outUpdate.getDestCount(); counter++) {
+			BGPUpdate staleUpdate = unsentToPeer.put(outUpdate.getDest(counter), outUpdate);
+			if (staleUpdate == null || staleUpdate.hasStarted()) {
+				continue;
+			}
+
+			staleUpdate.dropDest(outUpdate.getDest(counter));
+			if (staleUpdate.getDestCount() == 0) {
+				this.outgoingUpdateQueues.get(peer).remove(staleUpdate);
+				peerSpeaker.pendingUpdateCount--;
+			}
 		}
+	}
 
-		if (this.recalcBestPath(dest)) {
-			this.locRibDependents.put(dest, nextUpdate);
+	/**
+	 * Called by a peer when it starts on an update we sent it, after this
+	 * point the update can no longer be coalesced with newer updates.
+	 * 
+	 * @param peer
+	 *            - the ASN of the peer receiving the update
+	 * @param startedUpdate
+	 *            - the update the peer started on
+	 */
+	private void markUpdateStarted(int peer, BGPUpdate startedUpdate) {
+		HashMap<Integer, BGPUpdate> unsentToPeer = this.unsentUpdates.get(peer);
+		for (int counter = 0; counter < startedUpdate.getDestCount(); counter++) {
+			int dest = startedUpdate.getDest(counter);
+			if (unsentToPeer.get(dest) == startedUpdate) {
+				unsentToPeer.remove(dest);
+			}
 		}
 	}
 
@@ -197,12 +394,26 @@ public class BGPSpeaker {
 	 * MRAI timer, resulting in updates being sent to this router's peers.
 	 */
 	public synchronized void mraiExpire() {
+		MRAIExpireEvent jfrEvent = new MRAIExpireEvent();
+		jfrEvent.begin();
+		int dirtyCount = 0;
+		int emittedCount = 0;
 
 		synchronized (this.dirtyDests) {
 			for (int tPeer : this.dirtyDests.keySet()) {
 				for (int tDest : this.dirtyDests.get(tPeer)) {
 					this.sendUpdate(tDest, tPeer);
 				}
+				dirtyCount += this.dirtyDests.get(tPeer).size();
+
+				/*
+				 * Everything for this peer is in the packer, flush it out as
+				 * multi-destination updates
+				 */
+				for (BGPUpdate tUpdate : this.updatePacker.buildUpdates()) {
+					this.enqueueUpdate(tPeer, tUpdate);
+					emittedCount++;
+				}
 
 				this.dirtyDests.get(tPeer).clear();
 			}
@@ -212,14 +423,51 @@ public class BGPSpeaker {
 			System.out.println("MRAI fire at " + this.getASN() + " time " + this.nextMRAI);
 		}
 
+		jfrEvent.finish(this.getASN(), dirtyCount, emittedCount, this.nextMRAI);
+		if (this.costCounters != null) {
+			this.costCounters.countUpdatesEmitted(emittedCount);
+		}
+
 		/*
 		 * Update the MRAI time
 		 */
 		this.nextMRAI += BGPSpeaker.MRAI_LENGTH;
 	}
 
+	/**
+	 * Throws away every update queued to our peers, so the MRAI can be
+	 * expired over and over without the queues growing. Package visible for
+	 * BenchHook, never call this during a simulation.
+	 * 
+	 * @param delivered
+	 *            - if true the Adj-RIB-Out keeps the thrown away updates, as
+	 *            if the peers had received them, otherwise their
+	 *            destinations are cleared from it, as if the updates were
+	 *            dropped unsent and the peers hold nothing for them
+	 */
+	void discardOutgoingUpdates(boolean delivered) {
+		for (int tPeer : this.outgoingUpdateQueues.keySet()) {
+			LinkedList<BGPUpdate> tQueue = this.outgoingUpdateQueues.get(tPeer);
+			if (!delivered) {
+				int peerIndex = this.adjOutRib.getPeerIndex(tPeer);
+				for (BGPUpdate tUpdate : tQueue) {
+					for (int counter = 0; counter < tUpdate.getDestCount(); counter++) {
+						this.adjOutRib.recordWithdrawal(tUpdate.getDest(counter), peerIndex);
+					}
+				}
+			}
+			this.peers.get(tPeer).pendingUpdateCount -= tQueue.size();
+			tQueue.clear();
+			this.unsentUpdates.get(tPeer).clear();
+		}
+	}
+
 	public MRAIFireEvent getNextMRAI() {
-		return new MRAIFireEvent(this.nextMRAI, this);
+		return this.mraiEvent;
+	}
+
+	public double getNextMRAITime() {
+		return this.nextMRAI;
 	}
 
 	/**
@@ -237,6 +485,10 @@ public class BGPSpeaker {
 		this.handleAdvertisement(selfUpdate);
 		selfUpdate.fakeFinishedInternalUpdate();
 		incQueue.add(selfUpdate);
+		this.pendingUpdateCount++;
+		if (this.costCounters != null) {
+			this.costCounters.noteQueueDepth(this.pendingUpdateCount);
+		}
 
 		return true;
 	}
@@ -263,9 +515,18 @@ public class BGPSpeaker {
 		}
 	}
 
-	public ProcessEvent checkIfProcessingEventNeedsUpdating(double currentTime) {
-		ProcessEvent evict = null;
-		double timeDelta = this.nextProcessEvent.getEventTime() - currentTime;
+	/**
+	 * Recomputes when the next incoming update finishes. This does not touch
+	 * the process event itself, the caller is expected to move the event to
+	 * getNextProcessTime() if this reports a change.
+	 * 
+	 * @param currentTime
+	 *            - the simulated time we have advanced to
+	 * @return - true if the next process time moved, false otherwise
+	 */
+	public boolean checkIfProcessingEventNeedsUpdating(double currentTime) {
+		boolean moved = false;
+		double timeDelta = this.nextProcessTime - currentTime;
 
 		/*
 		 * Update if our current next to process has slowed down
@@ -277,13 +538,13 @@ public class BGPSpeaker {
 			 * _think_), handle it instead of eatting a null pointer..
 			 */
 			if (this.incUpdateQueues.get(this.nextProcessQueue).isEmpty()) {
-				evict = this.nextProcessEvent;
+				moved = true;
 				timeDelta = Double.MAX_VALUE;
 			} else {
 				double etc = this.incUpdateQueues.get(this.nextProcessQueue).peek().getEstimatedCompletionTime();
 				if (timeDelta < etc && Math.abs(timeDelta - etc) > BGPUpdate.COMPLETE_THRESHOLD) {
-					evict = this.nextProcessEvent;
-					this.nextProcessEvent = new ProcessEvent(etc + currentTime, this);
+					moved = true;
+					this.nextProcessTime = etc + currentTime;
 					timeDelta = etc;
 				}
 			}
@@ -311,16 +572,14 @@ public class BGPSpeaker {
 				if (Math.abs(timeDelta - etc) < BGPUpdate.COMPLETE_THRESHOLD) {
 					continue;
 				}
-				if (evict == null) {
-					evict = this.nextProcessEvent;
-				}
-				this.nextProcessEvent = new ProcessEvent(etc + currentTime, this);
+				moved = true;
+				this.nextProcessTime = etc + currentTime;
 				this.nextProcessQueue = tASN;
 				timeDelta = etc;
 			}
 		}
 
-		return evict;
+		return moved;
 	}
 
 	//TODO these three functions can be killed at the end of testing
@@ -365,13 +624,66 @@ public class BGPSpeaker {
 		return this.nextProcessEvent;
 	}
 
+	public double getNextProcessTime() {
+		return this.nextProcessTime;
+	}
+
+	/**
+	 * Reads the clock for cost accounting, pair with chargeCost once the work
+	 * for this speaker is done. Free when cost accounting is off.
+	 * 
+	 * @return - the start time to hand to chargeCost
+	 */
+	public long costClock() {
+		if (this.costCounters == null) {
+			return 0L;
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * Charges the time since costClock to one of this speaker's activities,
+	 * does nothing when cost accounting is off.
+	 * 
+	 * @param activity
+	 *            - the SpeakerCounters activity
+	 * @param since
+	 *            - the value costClock returned
+	 */
+	public void chargeCost(int activity, long since) {
+		if (this.costCounters != null) {
+			this.costCounters.charge(activity, since);
+		}
+	}
+
+	/**
+	 * Fetches this speaker's cost counters.
+	 * 
+	 * @return - the counters, or null if cost accounting is off
+	 */
+	public SpeakerCounters getCostCounters() {
+		return this.costCounters;
+	}
+
+	/**
+	 * Fetches when this speaker last finished processing an update, once the
+	 * speaker is done this is when it converged.
+	 * 
+	 * @return - the simulated time of the last finished update, 0 if there
+	 *         hasn't been one
+	 */
+	public double getLastUpdateDoneTime() {
+		return this.lastUpdateDoneTime;
+	}
+
 	/**
 	 * Handles when we've finished a processing event, essentially it resets the
 	 * processing event to the end of the world and then uses existing machinery
 	 * to compute when the real next event is
 	 */
 	public void handleProcessingEventCompleted(double currentTime) {
-		this.nextProcessEvent = new ProcessEvent(Long.MAX_VALUE, this);
+		this.lastUpdateDoneTime = currentTime;
+		this.nextProcessTime = Long.MAX_VALUE;
 		this.nextProcessQueue = -1;
 		this.checkIfProcessingEventNeedsUpdating(currentTime);
 	}
@@ -408,18 +720,15 @@ public class BGPSpeaker {
 				 * If it's in the local rib dependancy, remove it, as it's
 				 * finished now
 				 */
-				int dest = -1;
-				if (headOfQueue.isWithdrawal()) {
-					dest = headOfQueue.getWithdrawnDest();
-				} else {
-					dest = headOfQueue.getAdvertisedRoute().getDest();
-				}
-
-				if (this.locRibDependents.get(dest) != null && this.locRibDependents.get(dest).equals(headOfQueue)) {
-					this.locRibDependents.remove(dest);
+				for (int counter = 0; counter < headOfQueue.getDestCount(); counter++) {
+					int dest = headOfQueue.getDest(counter);
+					if (this.locRibDependents.get(dest) == headOfQueue) {
+						this.locRibDependents.remove(dest);
+					}
 				}
 
 				tQueue.poll();
+				this.pendingUpdateCount--;
 
 				/*
 				 * If the queue is now empty we can move on to the next queue
@@ -431,8 +740,14 @@ public class BGPSpeaker {
 
 			headOfQueue = tQueue.peek();
 			if (!headOfQueue.hasBeenProcessed()) {
-				this.handleAdvertisement(tQueue.peek());
-				tQueue.peek().markAsProcessed();
+				if (tASN != this.getASN()) {
+					this.peers.get(tASN).markUpdateStarted(this.getASN(), headOfQueue);
+				}
+				this.handleAdvertisement(headOfQueue);
+				headOfQueue.markAsProcessed();
+				if (this.costCounters != null) {
+					this.costCounters.countUpdateProcessed();
+				}
 			}
 		}
 	}
@@ -533,6 +848,8 @@ public class BGPSpeaker {
 		 * If we have a new path, mark that we have a dirty destination
 		 */
 		if (changed) {
+			new BestPathChangeEvent().record(this.getASN(), dest, currentInstall == null ? -1
+					: currentInstall.getPathLength(), currentBest == null ? -1 : currentBest.getPathLength());
 			synchronized (this.dirtyDests) {
 				if (currentBest == null) {
 					this.outRib.remove(dest);
@@ -552,13 +869,14 @@ public class BGPSpeaker {
 
 	/**
 	 * Method that handles actual BGP path selection. Slightly abbreviated, does
-	 * AS relation, path length, then tie break.
+	 * AS relation, path length, then tie break. Package visible for
+	 * BenchHook.
 	 * 
 	 * @param possList
 	 *            - the possible valid routes
 	 * @return - the "best" of the valid routes by usual BGP metrics
 	 */
-	private BGPRoute pathSelection(List<BGPRoute> possList) {
+	BGPRoute pathSelection(List<BGPRoute> possList) {
 		BGPRoute currentBest = null;
 		int currentRel = Integer.MAX_VALUE;
 		for (BGPRoute tPath : possList) {
@@ -590,18 +908,16 @@ public class BGPSpeaker {
 
 	/**
 	 * Internal function to deal with the sending of advertisements or explicit
-	 * withdrawals of routes. Does valley free routing.
+	 * withdrawals of routes. Does valley free routing. The changes are handed
+	 * to the update packer, it is up to the caller to flush it.
 	 * 
 	 * @param dest
 	 *            - the destination of the route we need to advertise a change
 	 *            in
 	 */
 	private BGPRoute sendUpdate(int dest, int peer) {
-		if (this.adjOutRib.get(dest) == null) {
-			this.adjOutRib.put(dest, new HashSet<BGPSpeaker>());
-		}
-
-		boolean prevAdvedTo = this.adjOutRib.get(dest).contains(peer);
+		int peerIndex = this.adjOutRib.getPeerIndex(peer);
+		boolean prevAdvedTo = this.adjOutRib.wasAdvertised(dest, peerIndex);
 		boolean newAdvTo = false;
 		BGPRoute pathToAdv = this.outRib.get(dest);
 
@@ -610,23 +926,27 @@ public class BGPSpeaker {
 
 			if (this.myAS.getCustomers().contains(peer) || dest == this.getASN()
 					|| this.myAS.getCustomers().contains(nextHop)) {
-				BGPUpdate outUpdate = BGPUpdate.buildAdvertisement(pathToAdv);
-				outUpdate.setParent(this.locRibDependents.get(dest));
-				this.outgoingUpdateQueues.get(peer).add(outUpdate);
 				newAdvTo = true;
 
-				if (DEBUG) {
-					System.out.println("adving: " + dest + " to " + peer);
+				/*
+				 * If the peer already holds this exact path from us there is
+				 * nothing to tell it
+				 */
+				if (!this.adjOutRib.holdsRoute(dest, peerIndex, pathToAdv)) {
+					this.updatePacker.addAdvertisement(pathToAdv, this.locRibDependents.get(dest));
+					this.adjOutRib.recordAdvertisement(dest, peerIndex, pathToAdv);
+
+					if (DEBUG) {
+						System.out.println("adving: " + dest + " to " + peer);
+					}
 				}
 			}
 		}
 
 		if (prevAdvedTo && !newAdvTo) {
-			this.adjOutRib.get(dest).remove(peer);
-			BGPUpdate outUpdate = BGPUpdate.buildWithdrawal(dest, this.getASN(), this.peers.get(dest).getASObject()
-					.getCIDRSize());
-			outUpdate.setParent(this.locRibDependents.get(dest));
-			this.outgoingUpdateQueues.get(peer).add(outUpdate);
+			this.updatePacker.addWithdrawal(dest, this.adjOutRib.getLastAdvertised(dest).getSize(),
+					this.locRibDependents.get(dest));
+			this.adjOutRib.recordWithdrawal(dest, peerIndex);
 		}
 
 		return pathToAdv;
@@ -666,10 +986,8 @@ public class BGPSpeaker {
 	 *         dirty routes, false otherwise
 	 */
 	public boolean isDone() {
-		for (Queue<BGPUpdate> tQueue : this.incUpdateQueues.values()) {
-			if (!tQueue.isEmpty()) {
-				return false;
-			}
+		if (this.pendingUpdateCount > 0) {
+			return false;
 		}
 
 		for (HashSet<Integer> tSet : this.dirtyDests.values()) {
@@ -681,14 +999,14 @@ public class BGPSpeaker {
 		return true;
 	}
 
+	/**
+	 * Fetches the number of updates sitting in this speaker's incoming queues.
+	 * This is maintained as updates are queued and finished, so it is O(1).
+	 * 
+	 * @return - the number of updates waiting on this speaker
+	 */
 	public long getWorkRemaining() {
-		long updatesPending = 0;
-
-		for (Queue<BGPUpdate> tQueue : this.incUpdateQueues.values()) {
-			updatesPending += tQueue.size();
-		}
-
-		return updatesPending;
+		return this.pendingUpdateCount;
 	}
 
 	/**
@@ -765,32 +1083,23 @@ public class BGPSpeaker {
 	}
 
 	/**
-	 * Computes the total memory load of this BGP speaker.
+	 * Fetches the total memory load of this BGP speaker. This is maintained as
+	 * routes enter and leave the in RIB, so it is O(1).
 	 * 
 	 * @return - the memory consumed by this BGP speaker's in RIB in bytes
 	 */
 	public long memLoad() {
-		long memCount = 0;
-
-		for (int tDest : this.inRib.keySet()) {
-			for (BGPRoute tRoute : this.inRib.get(tDest)) {
-				memCount += (tRoute.getPathLength() * 15) + (405 * tRoute.getSize());
-			}
-		}
-
-		return memCount;
+		return this.inRibMemLoad;
 	}
 
+	/**
+	 * Fetches the number of CIDRs covered by all routes in the in RIB. This is
+	 * maintained as routes enter and leave the in RIB, so it is O(1).
+	 * 
+	 * @return - the total size of the in RIB
+	 */
 	public int calcTotalRouteCount() {
-		int routeCount = 0;
-
-		for (int tDest : this.inRib.keySet()) {
-			for (BGPRoute tRoute : this.inRib.get(tDest)) {
-				routeCount += tRoute.getSize();
-			}
-		}
-
-		return routeCount;
+		return this.inRibRouteCount;
 	}
 
 	public int calcDistinctDestCount() {
@@ -806,4 +1115,56 @@ public class BGPSpeaker {
 	public AS getASObject() {
 		return this.myAS;
 	}
+
+	/**
+	 * Hands this speaker's RIBs and queues to a heap footprint estimate. The
+	 * incoming queues from peers are the peers' outgoing queues, so only our
+	 * internal queue is charged here. Only call this while the simulation is
+	 * stopped.
+	 * 
+	 * @param footprint
+	 *            - the estimate to charge
+	 */
+	public void measureHeap(HeapFootprint footprint) {
+		footprint.chargeMap(HeapFootprint.ADJ_IN_RIB, this.adjInRib);
+		for (HashMap<Integer, BGPRoute> tPeerRib : this.adjInRib.values()) {
+			footprint.chargeMap(HeapFootprint.ADJ_IN_RIB, tPeerRib);
+			for (BGPRoute tRoute : tPeerRib.values()) {
+				footprint.chargeRoute(HeapFootprint.ADJ_IN_RIB, tRoute);
+			}
+		}
+		footprint.chargeMap(HeapFootprint.IN_RIB, this.inRib);
+		for (List<BGPRoute> tRoutes : this.inRib.values()) {
+			footprint.chargeRouteList(HeapFootprint.IN_RIB, tRoutes);
+		}
+		footprint.chargeMap(HeapFootprint.LOC_RIB, this.locRib);
+		for (BGPRoute tRoute : this.locRib.values()) {
+			footprint.chargeRoute(HeapFootprint.LOC_RIB, tRoute);
+		}
+		footprint.chargeMap(HeapFootprint.OUT_RIB, this.outRib);
+		for (BGPRoute tRoute : this.outRib.values()) {
+			footprint.chargeRoute(HeapFootprint.OUT_RIB, tRoute);
+		}
+		this.adjOutRib.measureHeap(footprint);
+
+		footprint.chargeMap(HeapFootprint.UPDATE_QUEUES, this.outgoingUpdateQueues);
+		for (LinkedList<BGPUpdate> tQueue : this.outgoingUpdateQueues.values()) {
+			footprint.chargeUpdateQueue(HeapFootprint.UPDATE_QUEUES, tQueue);
+		}
+		footprint.chargeMap(HeapFootprint.UPDATE_QUEUES, this.incUpdateQueues);
+		footprint.chargeUpdateQueue(HeapFootprint.UPDATE_QUEUES, this.incUpdateQueues.get(this.getASN()));
+		footprint.chargeMap(HeapFootprint.UPDATE_QUEUES, this.unsentUpdates);
+		for (HashMap<Integer, BGPUpdate> tUnsent : this.unsentUpdates.values()) {
+			footprint.chargeMap(HeapFootprint.UPDATE_QUEUES, tUnsent);
+		}
+
+		footprint.chargeMap(HeapFootprint.OTHER, this.locRibDependents);
+		for (BGPUpdate tUpdate : this.locRibDependents.values()) {
+			footprint.chargeUpdate(HeapFootprint.OTHER, tUpdate);
+		}
+		footprint.chargeMap(HeapFootprint.OTHER, this.dirtyDests);
+		for (HashSet<Integer> tDirty : this.dirtyDests.values()) {
+			footprint.chargeSet(HeapFootprint.OTHER, tDirty);
+		}
+	}
 }
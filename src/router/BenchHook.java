@@ -0,0 +1,64 @@
+package router;
+
+import java.util.List;
+
+import bgp.BGPRoute;
+import bgp.BGPUpdate;
+
+/**
+ * The one way the microbenchmarks in the bench package reach the parts of
+ * BGPSpeaker that are package visible, so the speaker itself doesn't have to
+ * open them up. Nothing here is for use by a simulation, calling any of it
+ * on a speaker that is being simulated will leave that speaker out of step
+ * with its peers.
+ *
+ * @author pendgaft
+ *
+ */
+public final class BenchHook {
+
+	private BenchHook() {
+	}
+
+	/**
+	 * Runs path selection over a set of candidate routes, see
+	 * BGPSpeaker.pathSelection.
+	 *
+	 * @param speaker
+	 *            - the speaker doing the selection
+	 * @param possList
+	 *            - the candidate routes
+	 * @return - the best route
+	 */
+	public static BGPRoute pathSelection(BGPSpeaker speaker, List<BGPRoute> possList) {
+		return speaker.pathSelection(possList);
+	}
+
+	/**
+	 * Applies an update to the speaker's RIBs directly, without it going
+	 * through an incoming queue, see BGPSpeaker.handleAdvertisement.
+	 *
+	 * @param speaker
+	 *            - the speaker receiving the update
+	 * @param update
+	 *            - the update, its route's first hop must be one of the
+	 *            speaker's peers
+	 */
+	public static void handleAdvertisement(BGPSpeaker speaker, BGPUpdate update) {
+		speaker.handleAdvertisement(update);
+	}
+
+	/**
+	 * Throws away every update the speaker has queued to its peers, see
+	 * BGPSpeaker.discardOutgoingUpdates.
+	 *
+	 * @param speaker
+	 *            - the speaker
+	 * @param delivered
+	 *            - true to leave the speaker as if its peers got the updates,
+	 *            false as if the updates were dropped unsent
+	 */
+	public static void discardOutgoingUpdates(BGPSpeaker speaker, boolean delivered) {
+		speaker.discardOutgoingUpdates(delivered);
+	}
+}
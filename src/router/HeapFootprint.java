@@ -0,0 +1,468 @@
+package router;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+import bgp.BGPRoute;
+import bgp.BGPUpdate;
+
+/**
+ * Estimates how much JVM heap the simulator's own per speaker structures
+ * hold, which is a different thing from BGPSpeaker.memLoad (that models the
+ * memory a real router would need). Each speaker hands its RIBs and queues to
+ * the estimator, which sizes every object in them from the layout HotSpot
+ * uses on this JVM (compressed oops or not, object alignment), and charges
+ * the bytes to the structure that holds them. The totals, by structure and
+ * by speaker, say where the heap goes and whether a topology will fit in a
+ * given -Xmx.
+ *
+ * The same route object is usually held by the adj in RIB, the in RIB and
+ * the loc RIB at once, each route (and each update) is charged once per
+ * speaker, to the first structure it is found in, in the order of
+ * STRUCTURE_NAMES. Hash tables and ArrayLists are sized from their entry
+ * counts as if they had only ever grown, tables that grew and then emptied
+ * are under counted. Boxed ASNs in paths are shared between a route and
+ * every copy made of it, so each route owning a path is charged for the one
+ * box it added, not one per hop.
+ *
+ * Not thread safe, only measure speakers while the simulation is stopped.
+ *
+ * @author pendgaft
+ *
+ */
+public class HeapFootprint {
+
+	public static final int ADJ_IN_RIB = 0;
+	public static final int IN_RIB = 1;
+	public static final int LOC_RIB = 2;
+	public static final int OUT_RIB = 3;
+	public static final int ADJ_RIB_OUT = 4;
+	public static final int UPDATE_QUEUES = 5;
+
+	/**
+	 * Loc RIB dependents (updates kept alive after they were processed) and
+	 * the dirty destination sets
+	 */
+	public static final int OTHER = 6;
+
+	public static final String[] STRUCTURE_NAMES = { "adjInRib", "inRib", "locRib", "outRib", "adjRibOut",
+			"updateQueues", "other" };
+
+	/**
+	 * Share of -Xmx the structures may use and still be called a fit, the
+	 * rest is left for the topology, the event queue and the collector
+	 */
+	public static final double XMX_HEADROOM = 0.75;
+
+	public static final int REF_SIZE;
+	public static final int HEADER_SIZE;
+	public static final int ARRAY_HEADER_SIZE;
+	public static final int ALIGNMENT;
+
+	/*
+	 * Read the layout off the running JVM, falling back to a 64 bit JVM with
+	 * compressed oops (the default for heaps under 32 GB) if it won't say
+	 */
+	static {
+		boolean compressedOops = true;
+		boolean compressedClasses = true;
+		int alignment = 8;
+		try {
+			com.sun.management.HotSpotDiagnosticMXBean hotspotBean = ManagementFactory
+					.getPlatformMXBean(com.sun.management.HotSpotDiagnosticMXBean.class);
+			compressedOops = Boolean.parseBoolean(hotspotBean.getVMOption("UseCompressedOops").getValue());
+			compressedClasses = Boolean.parseBoolean(hotspotBean.getVMOption("UseCompressedClassPointers")
+					.getValue());
+			alignment = Integer.parseInt(hotspotBean.getVMOption("ObjectAlignmentInBytes").getValue());
+		} catch (RuntimeException e) {
+			/*
+			 * Not HotSpot, or an option went away, keep the defaults
+			 */
+		}
+		REF_SIZE = compressedOops ? 4 : 8;
+		HEADER_SIZE = compressedClasses ? 12 : 16;
+		ARRAY_HEADER_SIZE = HeapFootprint.HEADER_SIZE + 4;
+		ALIGNMENT = alignment;
+	}
+
+	private static final long INTEGER_SIZE = HeapFootprint.objectSize(0, 4);
+	private static final long HASH_MAP_SIZE = HeapFootprint.objectSize(4, 16);
+	private static final long HASH_NODE_SIZE = HeapFootprint.objectSize(3, 4);
+	private static final long HASH_SET_SIZE = HeapFootprint.objectSize(1, 0);
+	private static final long ARRAY_LIST_SIZE = HeapFootprint.objectSize(1, 8);
+	private static final long LINKED_LIST_SIZE = HeapFootprint.objectSize(2, 8);
+	private static final long LINKED_NODE_SIZE = HeapFootprint.objectSize(3, 0);
+	private static final long UNMODIFIABLE_LIST_SIZE = HeapFootprint.objectSize(2, 0);
+
+	/*
+	 * Our own classes, these must follow their fields. BGPRoute: the path
+	 * reference, then destASN and size (4 bytes each) and sharedPath (1).
+	 * BGPUpdate: withdrawalDests, withdrawalSizes, advRoutes, parentUpdate
+	 * and childUpdates references, then withdrawal and bgpProcessed (1 byte
+	 * each), withrdawalSource (4) and sendRate, estCompletion,
+	 * availToSendSize, completedSize and totalSize (8 each).
+	 */
+	private static final long ROUTE_SIZE = HeapFootprint.objectSize(1, 9);
+	private static final long UPDATE_SIZE = HeapFootprint.objectSize(5, 46);
+
+	private long[] totalBytes;
+	private long[] maxSpeakerBytes;
+	private int[] maxSpeakerASN;
+	private int speakerCount;
+	private long adjInRibRoutes;
+
+	private TreeMap<Integer, long[]> speakerBytes;
+	private long[] currentBytes;
+	private IdentityHashMap<Object, Boolean> seen;
+
+	public HeapFootprint() {
+		this.totalBytes = new long[HeapFootprint.STRUCTURE_NAMES.length];
+		this.maxSpeakerBytes = new long[HeapFootprint.STRUCTURE_NAMES.length];
+		this.maxSpeakerASN = new int[HeapFootprint.STRUCTURE_NAMES.length];
+		this.speakerCount = 0;
+		this.adjInRibRoutes = 0;
+		this.speakerBytes = new TreeMap<Integer, long[]>();
+		this.seen = new IdentityHashMap<Object, Boolean>();
+	}
+
+	/**
+	 * Measures a set of speakers, adding them to the totals.
+	 *
+	 * @param speakers
+	 *            - the speakers to measure
+	 */
+	public void measure(Collection<BGPSpeaker> speakers) {
+		for (BGPSpeaker tSpeaker : speakers) {
+			this.currentBytes = new long[HeapFootprint.STRUCTURE_NAMES.length];
+			tSpeaker.measureHeap(this);
+			this.seen.clear();
+
+			this.speakerBytes.put(tSpeaker.getASN(), this.currentBytes);
+			for (int structure = 0; structure < this.currentBytes.length; structure++) {
+				this.totalBytes[structure] += this.currentBytes[structure];
+				if (this.currentBytes[structure] > this.maxSpeakerBytes[structure]) {
+					this.maxSpeakerBytes[structure] = this.currentBytes[structure];
+					this.maxSpeakerASN[structure] = tSpeaker.getASN();
+				}
+			}
+			this.speakerCount++;
+		}
+		this.currentBytes = null;
+	}
+
+	/**
+	 * Rounds a size up to the JVM's object alignment.
+	 */
+	private static long align(long size) {
+		return (size + HeapFootprint.ALIGNMENT - 1) / HeapFootprint.ALIGNMENT * HeapFootprint.ALIGNMENT;
+	}
+
+	/**
+	 * Sizes a plain object, ignoring any padding between fields.
+	 *
+	 * @param refFields
+	 *            - the number of reference fields, including inherited ones
+	 * @param primitiveBytes
+	 *            - the bytes taken by the primitive fields
+	 * @return - the size of the object in bytes
+	 */
+	public static long objectSize(int refFields, int primitiveBytes) {
+		return HeapFootprint.align(HeapFootprint.HEADER_SIZE + refFields * HeapFootprint.REF_SIZE + primitiveBytes);
+	}
+
+	/**
+	 * Sizes an array.
+	 *
+	 * @param length
+	 *            - the length of the array
+	 * @param elementSize
+	 *            - the bytes per element, REF_SIZE for object arrays
+	 * @return - the size of the array in bytes
+	 */
+	public static long arraySize(int length, int elementSize) {
+		return HeapFootprint.align(HeapFootprint.ARRAY_HEADER_SIZE + (long) length * elementSize);
+	}
+
+	/**
+	 * Sizes a boxed int, the JVM caches the small ones so those are free.
+	 */
+	private static long boxSize(int value) {
+		if (value >= -128 && value <= 127) {
+			return 0;
+		}
+		return HeapFootprint.INTEGER_SIZE;
+	}
+
+	/**
+	 * The table length a HashMap holding this many entries has grown to.
+	 */
+	private static int hashTableLength(int size) {
+		if (size == 0) {
+			return 0;
+		}
+		int length = 16;
+		while (size > length * 3 / 4) {
+			length *= 2;
+		}
+		return length;
+	}
+
+	/**
+	 * The backing array length an ArrayList holding this many elements has
+	 * grown to, the first add makes room for 10 and each grow adds half.
+	 */
+	private static int arrayListLength(int size) {
+		if (size == 0) {
+			return 0;
+		}
+		int length = 10;
+		while (length < size) {
+			length += length >> 1;
+		}
+		return length;
+	}
+
+	/**
+	 * Charges bytes directly to a structure, for structures that size
+	 * themselves.
+	 *
+	 * @param structure
+	 *            - the structure the bytes belong to
+	 * @param bytes
+	 *            - the bytes to charge
+	 */
+	public void charge(int structure, long bytes) {
+		this.currentBytes[structure] += bytes;
+	}
+
+	/**
+	 * Charges a map keyed by ASN, its table, entries and boxed keys, but not
+	 * what the values point at.
+	 *
+	 * @param structure
+	 *            - the structure the map belongs to
+	 * @param map
+	 *            - the map
+	 */
+	public void chargeMap(int structure, Map<Integer, ?> map) {
+		long bytes = HeapFootprint.HASH_MAP_SIZE
+				+ HeapFootprint.arraySize(HeapFootprint.hashTableLength(map.size()), HeapFootprint.REF_SIZE);
+		bytes += map.size() * HeapFootprint.HASH_NODE_SIZE;
+		for (int tKey : map.keySet()) {
+			bytes += HeapFootprint.boxSize(tKey);
+		}
+		this.currentBytes[structure] += bytes;
+	}
+
+	/**
+	 * Charges a set of ASNs, and the map behind it.
+	 *
+	 * @param structure
+	 *            - the structure the set belongs to
+	 * @param set
+	 *            - the set
+	 */
+	public void chargeSet(int structure, HashSet<Integer> set) {
+		long bytes = HeapFootprint.HASH_SET_SIZE + HeapFootprint.HASH_MAP_SIZE
+				+ HeapFootprint.arraySize(HeapFootprint.hashTableLength(set.size()), HeapFootprint.REF_SIZE);
+		bytes += set.size() * HeapFootprint.HASH_NODE_SIZE;
+		for (int tValue : set) {
+			bytes += HeapFootprint.boxSize(tValue);
+		}
+		this.currentBytes[structure] += bytes;
+	}
+
+	/**
+	 * Charges an ArrayList of routes and every route in it.
+	 *
+	 * @param structure
+	 *            - the structure the list belongs to
+	 * @param routes
+	 *            - the list
+	 */
+	public void chargeRouteList(int structure, List<BGPRoute> routes) {
+		this.currentBytes[structure] += HeapFootprint.ARRAY_LIST_SIZE
+				+ HeapFootprint.arraySize(HeapFootprint.arrayListLength(routes.size()), HeapFootprint.REF_SIZE);
+		for (BGPRoute tRoute : routes) {
+			this.chargeRoute(structure, tRoute);
+		}
+	}
+
+	/**
+	 * Charges a route and its path, unless this speaker already charged
+	 * them.
+	 *
+	 * @param structure
+	 *            - the structure holding the route
+	 * @param route
+	 *            - the route, may be null
+	 */
+	public void chargeRoute(int structure, BGPRoute route) {
+		if (route == null || this.seen.put(route, Boolean.TRUE) != null) {
+			return;
+		}
+		if (structure == HeapFootprint.ADJ_IN_RIB) {
+			this.adjInRibRoutes++;
+		}
+
+		long bytes = HeapFootprint.ROUTE_SIZE;
+		List<Integer> path = route.fetchRawPath();
+		if (this.seen.put(path, Boolean.TRUE) == null) {
+			if (path instanceof LinkedList) {
+				bytes += HeapFootprint.LINKED_LIST_SIZE + path.size() * HeapFootprint.LINKED_NODE_SIZE;
+				if (path.size() > 0) {
+					bytes += HeapFootprint.boxSize(path.get(0));
+				}
+			} else {
+				/*
+				 * A seeder's shared template, an unmodifiable view of an
+				 * exactly sized ArrayList
+				 */
+				bytes += HeapFootprint.UNMODIFIABLE_LIST_SIZE + HeapFootprint.ARRAY_LIST_SIZE
+						+ HeapFootprint.arraySize(path.size(), HeapFootprint.REF_SIZE);
+				for (int tASN : path) {
+					bytes += HeapFootprint.boxSize(tASN);
+				}
+			}
+		}
+		this.currentBytes[structure] += bytes;
+	}
+
+	/**
+	 * Charges a queue of updates and every update in it.
+	 *
+	 * @param structure
+	 *            - the structure the queue belongs to
+	 * @param queue
+	 *            - the queue
+	 */
+	public void chargeUpdateQueue(int structure, LinkedList<BGPUpdate> queue) {
+		this.currentBytes[structure] += HeapFootprint.LINKED_LIST_SIZE + queue.size()
+				* HeapFootprint.LINKED_NODE_SIZE;
+		for (BGPUpdate tUpdate : queue) {
+			this.chargeUpdate(structure, tUpdate);
+		}
+	}
+
+	/**
+	 * Charges an update, its destination arrays, its routes and its list of
+	 * dependent updates, unless this speaker already charged it.
+	 *
+	 * @param structure
+	 *            - the structure holding the update
+	 * @param update
+	 *            - the update
+	 */
+	public void chargeUpdate(int structure, BGPUpdate update) {
+		if (this.seen.put(update, Boolean.TRUE) != null) {
+			return;
+		}
+
+		long bytes = HeapFootprint.UPDATE_SIZE;
+		int destCount = update.getDestCount();
+		if (update.isWithdrawal()) {
+			bytes += 2 * HeapFootprint.arraySize(destCount, 4);
+		} else {
+			bytes += HeapFootprint.arraySize(destCount, HeapFootprint.REF_SIZE);
+			for (int counter = 0; counter < destCount; counter++) {
+				this.chargeRoute(structure, update.getAdvertisedRoute(counter));
+			}
+		}
+		int childCount = update.getChildCount();
+		if (childCount > 0) {
+			bytes += HeapFootprint.LINKED_LIST_SIZE + childCount * HeapFootprint.LINKED_NODE_SIZE;
+		}
+		this.currentBytes[structure] += bytes;
+	}
+
+	public long getTotalBytes(int structure) {
+		return this.totalBytes[structure];
+	}
+
+	/**
+	 * Fetches the bytes charged over every structure.
+	 *
+	 * @return - the estimated footprint of all measured speakers in bytes
+	 */
+	public long getTotalBytes() {
+		long total = 0;
+		for (long tBytes : this.totalBytes) {
+			total += tBytes;
+		}
+		return total;
+	}
+
+	/**
+	 * Predicate to test if the measured structures fit in a heap, leaving
+	 * XMX_HEADROOM of it for everything else.
+	 *
+	 * @param maxHeap
+	 *            - the heap size, in bytes
+	 * @return - true if the structures fit
+	 */
+	public boolean fitsIn(long maxHeap) {
+		return this.getTotalBytes() <= (long) (maxHeap * HeapFootprint.XMX_HEADROOM);
+	}
+
+	/**
+	 * Builds the by structure report, with the verdict for a heap size.
+	 *
+	 * @param maxHeap
+	 *            - the heap size to judge against, in bytes
+	 * @return - the report
+	 */
+	public String buildReport(long maxHeap) {
+		StringBuilder strBuild = new StringBuilder();
+		long total = this.getTotalBytes();
+		strBuild.append("Estimated heap held by " + this.speakerCount + " speakers (" + HeapFootprint.REF_SIZE
+				+ " byte refs, " + HeapFootprint.HEADER_SIZE + " byte headers, " + HeapFootprint.ALIGNMENT
+				+ " byte alignment)\n");
+		strBuild.append(String.format("  %-13s %12s %7s %14s %16s\n", "structure", "MB", "share", "avg/speaker KB",
+				"max speaker KB"));
+		for (int structure = 0; structure < HeapFootprint.STRUCTURE_NAMES.length; structure++) {
+			strBuild.append(String.format("  %-13s %12.2f %6.1f%% %14.2f %9.2f (AS%d)\n",
+					HeapFootprint.STRUCTURE_NAMES[structure], this.totalBytes[structure] / 1000000.0,
+					this.totalBytes[structure] * 100.0 / Math.max(1, total), this.totalBytes[structure] / 1000.0
+							/ Math.max(1, this.speakerCount), this.maxSpeakerBytes[structure] / 1000.0,
+					this.maxSpeakerASN[structure]));
+		}
+		strBuild.append(String.format("  %-13s %12.2f\n", "total", total / 1000000.0));
+		if (this.adjInRibRoutes > 0) {
+			strBuild.append(String.format("  %.1f bytes per adj in RIB route, over all structures\n", (double) total
+					/ this.adjInRibRoutes));
+		}
+		strBuild.append(String.format("  %s in %.0f MB of heap (%.0f%% of it allowed for these structures)\n",
+				this.fitsIn(maxHeap) ? "Fits" : "Does NOT fit", maxHeap / 1000000.0, HeapFootprint.XMX_HEADROOM * 100.0));
+		return strBuild.toString();
+	}
+
+	/**
+	 * Writes each speaker's bytes by structure as CSV.
+	 *
+	 * @param fileName
+	 *            - the file to write
+	 * @throws IOException
+	 *             - if the file can't be written
+	 */
+	public void writeCSV(String fileName) throws IOException {
+		BufferedWriter outFile = new BufferedWriter(new FileWriter(fileName));
+		outFile.write("asn");
+		for (String tName : HeapFootprint.STRUCTURE_NAMES) {
+			outFile.write("," + tName);
+		}
+		outFile.write(",total");
+		outFile.newLine();
+		for (Map.Entry<Integer, long[]> tEntry : this.speakerBytes.entrySet()) {
+			outFile.write("" + tEntry.getKey());
+			long total = 0;
+			for (long tBytes : tEntry.getValue()) {
+				outFile.write("," + tBytes);
+				total += tBytes;
+			}
+			outFile.write("," + total);
+			outFile.newLine();
+		}
+		outFile.close();
+	}
+}
@@ -0,0 +1,114 @@
+package router;
+
+/**
+ * Optional cost accounting for one speaker, wall time charged to the speaker
+ * by activity plus counts of the work it did. These are used to find the
+ * handful of ASes that dominate a run's wall time.
+ *
+ * A speaker is only ever touched by one thread at a time (its worker during
+ * the phases, the driver between them), so plain longs do.
+ *
+ * @author pendgaft
+ *
+ */
+public class SpeakerCounters {
+
+	public static final int ADVANCE = 0;
+	public static final int CLEANUP = 1;
+	public static final int ESTIMATE = 2;
+	public static final int RESCHEDULE = 3;
+	public static final int MRAI = 4;
+	public static final int PROCESS_DONE = 5;
+	public static final String[] ACTIVITY_NAMES = { "advance", "cleanup", "estimate", "reschedule", "mrai",
+			"processDone" };
+
+	private long[] nanos;
+	private long updatesProcessed;
+	private long bestPathRecalcs;
+	private long updatesEmitted;
+	private long queueHighWater;
+
+	public SpeakerCounters() {
+		this.nanos = new long[SpeakerCounters.ACTIVITY_NAMES.length];
+		this.updatesProcessed = 0;
+		this.bestPathRecalcs = 0;
+		this.updatesEmitted = 0;
+		this.queueHighWater = 0;
+	}
+
+	/**
+	 * Charges the time since a clock read to an activity.
+	 * 
+	 * @param activity
+	 *            - the activity the time was spent on
+	 * @param since
+	 *            - a System.nanoTime reading from the start of the work
+	 */
+	public void charge(int activity, long since) {
+		this.nanos[activity] += System.nanoTime() - since;
+	}
+
+	public void countUpdateProcessed() {
+		this.updatesProcessed++;
+	}
+
+	public void countBestPathRecalc() {
+		this.bestPathRecalcs++;
+	}
+
+	public void countUpdatesEmitted(int count) {
+		this.updatesEmitted += count;
+	}
+
+	/**
+	 * Notes the current number of queued updates, keeping the largest seen.
+	 * 
+	 * @param depth
+	 *            - the number of updates waiting on the speaker
+	 */
+	public void noteQueueDepth(long depth) {
+		if (depth > this.queueHighWater) {
+			this.queueHighWater = depth;
+		}
+	}
+
+	/**
+	 * Fetches the time charged to an activity.
+	 * 
+	 * @param activity
+	 *            - the activity in question
+	 * @return - the time in ns
+	 */
+	public long getNanos(int activity) {
+		return this.nanos[activity];
+	}
+
+	/**
+	 * Fetches the time charged to every activity.
+	 * 
+	 * @return - the total time in ns
+	 */
+	public long getTotalNanos() {
+		long total = 0;
+		for (long tNanos : this.nanos) {
+			total += tNanos;
+		}
+		return total;
+	}
+
+	public long getUpdatesProcessed() {
+		return this.updatesProcessed;
+	}
+
+	public long getBestPathRecalcs() {
+		return this.bestPathRecalcs;
+	}
+
+	public long getUpdatesEmitted() {
+		return this.updatesEmitted;
+	}
+
+	public long getQueueHighWater() {
+		return this.queueHighWater;
+	}
+}
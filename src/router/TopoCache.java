@@ -0,0 +1,159 @@
+package router;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * On disk cache of built (parsed and pruned) topologies. An entry is a
+ * TopoSnapshot of the pruned topology, filed under a SHA-256 of the content
+ * of both input files and the prune count, so a hit skips parsing and pruning
+ * entirely, and editing either file (or asking for a different prune count)
+ * simply misses.
+ *
+ * Entries are named {rel file name}-p{prunes}-{hash}.snap, when a new entry is
+ * stored any older entry for the same rel file name and prune count is
+ * deleted, as those were built from versions of the files that no longer
+ * exist. Entries are written to a temp file and renamed into place, so a run
+ * dying mid write never leaves a truncated entry behind, and an entry that
+ * fails to load is deleted and treated as a miss.
+ *
+ * @author pendgaft
+ *
+ */
+public class TopoCache {
+
+	private File cacheDir;
+	private String entryPrefix;
+	private File entryFile;
+	private String relFileName;
+	private String ipFileName;
+
+	/**
+	 * Sets up the cache entry for a topology build, this hashes both files.
+	 *
+	 * @param cacheDirName
+	 *            - the directory holding cache entries, created if needed
+	 * @param relFile
+	 *            - the relationship file
+	 * @param ipFile
+	 *            - the cidr count file, can be null
+	 * @param numberOfPrunes
+	 *            - the prune depth being built
+	 * @throws IOException
+	 *             - if either file can't be read to hash it
+	 */
+	public TopoCache(String cacheDirName, String relFile, String ipFile, int numberOfPrunes) throws IOException {
+		this.cacheDir = new File(cacheDirName);
+		this.relFileName = relFile;
+		this.ipFileName = ipFile;
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("JVM is missing SHA-256", e);
+		}
+		TopoCache.hashFile(digest, relFile);
+		TopoCache.hashFile(digest, ipFile);
+		digest.update(ByteBuffer.allocate(4).putInt(numberOfPrunes).array());
+
+		StringBuilder hexHash = new StringBuilder();
+		for (byte tByte : digest.digest()) {
+			hexHash.append(String.format("%02x", tByte));
+		}
+		this.entryPrefix = new File(relFile).getName() + "-p" + numberOfPrunes + "-";
+		this.entryFile = new File(this.cacheDir, this.entryPrefix + hexHash + TopoSnapshot.SNAPSHOT_SUFFIX);
+	}
+
+	/**
+	 * Loads the cached topology if there is an entry for the current file
+	 * contents and prune count.
+	 *
+	 * @return - the pruned ASN to AS object map, null on a miss
+	 */
+	public HashMap<Integer, AS> load() {
+		if (!this.entryFile.isFile()) {
+			return null;
+		}
+
+		try {
+			long start = System.currentTimeMillis();
+			HashMap<Integer, AS> retMap = TopoSnapshot.read(this.entryFile.getPath());
+			System.out.println("Topology cache hit " + this.entryFile.getName() + " loaded in: "
+					+ (System.currentTimeMillis() - start) + " ms.");
+			return retMap;
+		} catch (IOException e) {
+			this.dropEntry(e.getMessage());
+			return null;
+		} catch (BufferUnderflowException e) {
+			this.dropEntry("truncated");
+			return null;
+		}
+	}
+
+	/**
+	 * Stores a freshly built topology as the entry for the current file
+	 * contents and prune count, clearing out entries for older versions of the
+	 * files. Failing to write the cache is reported but doesn't stop the run.
+	 *
+	 * @param prunedTopo
+	 *            - the pruned ASN to AS object map
+	 */
+	public void store(HashMap<Integer, AS> prunedTopo) {
+		if (!this.cacheDir.isDirectory() && !this.cacheDir.mkdirs()) {
+			System.out.println("Unable to create topology cache directory " + this.cacheDir);
+			return;
+		}
+
+		File tempFile = new File(this.cacheDir, this.entryFile.getName() + ".tmp");
+		try {
+			TopoSnapshot.write(prunedTopo, this.relFileName, this.ipFileName, tempFile.getPath());
+			if (!tempFile.renameTo(this.entryFile)) {
+				throw new IOException("could not rename " + tempFile + " to " + this.entryFile);
+			}
+		} catch (IOException e) {
+			System.out.println("Unable to write topology cache entry: " + e.getMessage());
+			tempFile.delete();
+			return;
+		}
+
+		/*
+		 * Anything else for this rel file and prune count is stale
+		 */
+		File[] oldEntries = this.cacheDir.listFiles();
+		if (oldEntries != null) {
+			for (File tEntry : oldEntries) {
+				if (tEntry.getName().startsWith(this.entryPrefix) && !tEntry.equals(this.entryFile)) {
+					tEntry.delete();
+				}
+			}
+		}
+	}
+
+	private void dropEntry(String reason) {
+		System.out.println("Dropping unreadable topology cache entry " + this.entryFile.getName() + ": " + reason);
+		this.entryFile.delete();
+	}
+
+	private static void hashFile(MessageDigest digest, String fileName) throws IOException {
+		if (fileName == null || !new File(fileName).isFile()) {
+			digest.update((byte) 0);
+			return;
+		}
+		digest.update((byte) 1);
+
+		RandomAccessFile inFile = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel inChannel = inFile.getChannel();
+			digest.update(ByteBuffer.allocate(8).putLong(inChannel.size()).array());
+			digest.update(inChannel.map(FileChannel.MapMode.READ_ONLY, 0, inChannel.size()));
+		} finally {
+			inFile.close();
+		}
+	}
+}
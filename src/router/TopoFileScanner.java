@@ -0,0 +1,250 @@
+package router;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Fast reader for the integer columnar topology files (the CAIDA pipe
+ * separated relationship files and the space separated CIDR count files). The
+ * file is memory mapped and digits/delimiters are scanned straight out of the
+ * byte buffer into primitive arrays, no Strings are ever built. Large files are
+ * split on line boundaries and scanned in parallel.
+ *
+ * Blank lines and lines starting with '#' are ignored, as are any fields past
+ * the ones asked for (newer CAIDA files carry a trailing source field).
+ *
+ * @author pendgaft
+ *
+ */
+public class TopoFileScanner {
+
+	/**
+	 * Files smaller than this are scanned on the calling thread, it isn't worth
+	 * spinning up threads for them
+	 */
+	private static final int PARALLEL_THRESHOLD = 4 * 1024 * 1024;
+
+	/**
+	 * Scans a file, returning the first numberOfFields integers of each line.
+	 *
+	 * @param fileName
+	 *            - the file to read
+	 * @param numberOfFields
+	 *            - how many integer fields to pull from each line
+	 * @param delimiter
+	 *            - the character between fields, if this is a space then any
+	 *            run of spaces/tabs separates fields
+	 * @return - the fields in column form, result[field][line], every column
+	 *         is the same length
+	 * @throws IOException
+	 *             - if the file can't be read or a line is malformed
+	 */
+	public static int[][] scanFile(String fileName, int numberOfFields, char delimiter) throws IOException {
+		RandomAccessFile inFile = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel inChannel = inFile.getChannel();
+			long fileSize = inChannel.size();
+			if (fileSize > Integer.MAX_VALUE) {
+				throw new IOException("Topology file too large to map: " + fileName);
+			}
+			MappedByteBuffer fileBuffer = inChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+
+			int numberOfChunks = 1;
+			if (fileSize >= TopoFileScanner.PARALLEL_THRESHOLD) {
+				numberOfChunks = Runtime.getRuntime().availableProcessors();
+			}
+			int[] bounds = TopoFileScanner.buildChunkBounds(fileBuffer, (int) fileSize, numberOfChunks);
+
+			/*
+			 * Scan the chunks, the first one on this thread, the rest on
+			 * helpers
+			 */
+			ChunkScan[] scans = new ChunkScan[bounds.length - 1];
+			Thread[] helpers = new Thread[scans.length];
+			for (int counter = 0; counter < scans.length; counter++) {
+				scans[counter] = new ChunkScan(fileBuffer.duplicate(), bounds[counter], bounds[counter + 1],
+						numberOfFields, delimiter);
+				if (counter > 0) {
+					helpers[counter] = new Thread(scans[counter]);
+					helpers[counter].setName("Topology scanner " + counter);
+					helpers[counter].start();
+				}
+			}
+			scans[0].run();
+			for (int counter = 1; counter < helpers.length; counter++) {
+				try {
+					helpers[counter].join();
+				} catch (InterruptedException e) {
+					throw new IOException("Interrupted while scanning " + fileName);
+				}
+			}
+
+			/*
+			 * Stitch the chunks back together in file order
+			 */
+			int totalLines = 0;
+			for (ChunkScan tScan : scans) {
+				if (tScan.failure != null) {
+					throw new IOException(tScan.failure + " in " + fileName);
+				}
+				totalLines += tScan.lineCount;
+			}
+			int[][] columns = new int[numberOfFields][totalLines];
+			int pos = 0;
+			for (ChunkScan tScan : scans) {
+				for (int field = 0; field < numberOfFields; field++) {
+					System.arraycopy(tScan.columns[field], 0, columns[field], pos, tScan.lineCount);
+				}
+				pos += tScan.lineCount;
+			}
+			return columns;
+		} finally {
+			inFile.close();
+		}
+	}
+
+	/**
+	 * Splits the buffer into roughly even chunks, nudging every boundary
+	 * forward to the start of a line.
+	 */
+	private static int[] buildChunkBounds(MappedByteBuffer fileBuffer, int fileSize, int numberOfChunks) {
+		int[] bounds = new int[numberOfChunks + 1];
+		bounds[0] = 0;
+		for (int counter = 1; counter < numberOfChunks; counter++) {
+			int pos = Math.max(bounds[counter - 1], (int) ((long) fileSize * counter / numberOfChunks));
+			while (pos < fileSize && pos > 0 && fileBuffer.get(pos - 1) != '\n') {
+				pos++;
+			}
+			bounds[counter] = pos;
+		}
+		bounds[numberOfChunks] = fileSize;
+		return bounds;
+	}
+
+	/**
+	 * Scans one line aligned chunk of the file into its own columns.
+	 */
+	private static class ChunkScan implements Runnable {
+
+		private ByteBuffer buffer;
+		private int start;
+		private int end;
+		private int numberOfFields;
+		private char delimiter;
+
+		private int[][] columns;
+		private int lineCount;
+		private String failure;
+
+		private ChunkScan(ByteBuffer buffer, int start, int end, int numberOfFields, char delimiter) {
+			this.buffer = buffer;
+			this.start = start;
+			this.end = end;
+			this.numberOfFields = numberOfFields;
+			this.delimiter = delimiter;
+
+			int guessLines = Math.max(16, (end - start) / 8);
+			this.columns = new int[numberOfFields][guessLines];
+			this.lineCount = 0;
+			this.failure = null;
+		}
+
+		public void run() {
+			int pos = this.start;
+			while (pos < this.end) {
+				pos = this.skipBlanks(pos);
+				if (pos >= this.end) {
+					break;
+				}
+
+				/*
+				 * Ignore blank lines and comments
+				 */
+				byte tByte = this.buffer.get(pos);
+				if (tByte == '\n') {
+					pos++;
+					continue;
+				}
+				if (tByte == '#') {
+					pos = this.skipLine(pos);
+					continue;
+				}
+
+				if (this.lineCount == this.columns[0].length) {
+					for (int field = 0; field < this.numberOfFields; field++) {
+						this.columns[field] = Arrays.copyOf(this.columns[field], this.lineCount * 2);
+					}
+				}
+
+				/*
+				 * Pull each number, checking the delimiter between them
+				 */
+				for (int field = 0; field < this.numberOfFields; field++) {
+					if (field > 0) {
+						if (this.delimiter != ' ') {
+							if (pos >= this.end || this.buffer.get(pos) != this.delimiter) {
+								this.failure = "Missing delimiter at byte " + pos;
+								return;
+							}
+							pos = this.skipBlanks(pos + 1);
+						} else if (pos < this.end && !TopoFileScanner.isBlank(this.buffer.get(pos - 1))) {
+							this.failure = "Missing delimiter at byte " + pos;
+							return;
+						}
+					}
+
+					boolean negative = false;
+					if (pos < this.end && this.buffer.get(pos) == '-') {
+						negative = true;
+						pos++;
+					}
+					long value = 0;
+					int digitStart = pos;
+					while (pos < this.end) {
+						int digit = this.buffer.get(pos) - '0';
+						if (digit < 0 || digit > 9) {
+							break;
+						}
+						value = value * 10 + digit;
+						if (value > Integer.MAX_VALUE) {
+							this.failure = "Value out of range at byte " + digitStart;
+							return;
+						}
+						pos++;
+					}
+					if (pos == digitStart) {
+						this.failure = "Expected a number at byte " + pos;
+						return;
+					}
+
+					this.columns[field][this.lineCount] = (int) (negative ? -value : value);
+					pos = this.skipBlanks(pos);
+				}
+
+				this.lineCount++;
+				pos = this.skipLine(pos);
+			}
+		}
+
+		private int skipBlanks(int pos) {
+			while (pos < this.end && TopoFileScanner.isBlank(this.buffer.get(pos))) {
+				pos++;
+			}
+			return pos;
+		}
+
+		private int skipLine(int pos) {
+			while (pos < this.end && this.buffer.get(pos) != '\n') {
+				pos++;
+			}
+			return pos + 1;
+		}
+	}
+
+	private static boolean isBlank(byte value) {
+		return value == ' ' || value == '\t' || value == '\r';
+	}
+}
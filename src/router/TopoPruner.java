@@ -0,0 +1,208 @@
+package router;
+
+import java.util.*;
+
+/**
+ * Computes every prune level of a topology in one pass. Pruning repeatedly
+ * strips ASes that have no customers, rolling their CIDRs up into their
+ * providers. Rather than rebuilding the whole graph for each level, this
+ * peels stubs off a compact (dense index) copy of the customer graph once,
+ * recording for each AS the prune level at which it disappears and the CIDR
+ * count it hands to its providers when it goes. Any prune depth can then be
+ * materialized directly.
+ *
+ * @author pendgaft
+ *
+ */
+public class TopoPruner {
+
+	/**
+	 * Prune level given to ASes that are never pruned (they sit on a customer
+	 * cycle, which real data has on occasion)
+	 */
+	public static final int NEVER_PRUNED = Integer.MAX_VALUE;
+
+	private HashMap<Integer, AS> unprunedTopo;
+
+	private int[] asns;
+	private int[] pruneLevel;
+	private int[] rolledCIDRs;
+	private int maxPruneLevel;
+
+	/**
+	 * Runs the peeling pass over the given topology.
+	 *
+	 * @param unpruned
+	 *            - the full ASN to AS mapping, this is not modified
+	 */
+	public TopoPruner(HashMap<Integer, AS> unpruned) {
+		this.unprunedTopo = unpruned;
+
+		this.asns = new int[unpruned.size()];
+		int pos = 0;
+		for (int tASN : unpruned.keySet()) {
+			this.asns[pos] = tASN;
+			pos++;
+		}
+		Arrays.sort(this.asns);
+
+		/*
+		 * Build the compact customer graph, CSR style, and count how many
+		 * customers each AS has left
+		 */
+		int[] custOffsets = new int[this.asns.length + 1];
+		for (int counter = 0; counter < this.asns.length; counter++) {
+			custOffsets[counter + 1] = custOffsets[counter] + unpruned.get(this.asns[counter]).getCustomers().size();
+		}
+		int[] customers = new int[custOffsets[this.asns.length]];
+		int[] provOffsets = new int[this.asns.length + 1];
+		for (int counter = 0; counter < this.asns.length; counter++) {
+			provOffsets[counter + 1] = provOffsets[counter] + unpruned.get(this.asns[counter]).getProviders().size();
+		}
+		int[] providers = new int[provOffsets[this.asns.length]];
+		int[] customersLeft = new int[this.asns.length];
+		for (int counter = 0; counter < this.asns.length; counter++) {
+			AS tAS = unpruned.get(this.asns[counter]);
+			pos = custOffsets[counter];
+			for (int tCust : tAS.getCustomers()) {
+				customers[pos] = this.indexOf(tCust);
+				pos++;
+			}
+			pos = provOffsets[counter];
+			for (int tProv : tAS.getProviders()) {
+				providers[pos] = this.indexOf(tProv);
+				pos++;
+			}
+			customersLeft[counter] = tAS.getCustomers().size();
+		}
+
+		/*
+		 * Peel stubs, an AS goes one level after the last of its customers
+		 * goes, and takes its own CIDRs plus everything its customers rolled
+		 * up to it
+		 */
+		this.pruneLevel = new int[this.asns.length];
+		this.rolledCIDRs = new int[this.asns.length];
+		Arrays.fill(this.pruneLevel, TopoPruner.NEVER_PRUNED);
+		int[] peelQueue = new int[this.asns.length];
+		int queueHead = 0;
+		int queueTail = 0;
+		for (int counter = 0; counter < this.asns.length; counter++) {
+			if (customersLeft[counter] == 0) {
+				peelQueue[queueTail] = counter;
+				queueTail++;
+			}
+		}
+		this.maxPruneLevel = 0;
+		while (queueHead < queueTail) {
+			int current = peelQueue[queueHead];
+			queueHead++;
+
+			int level = 1;
+			int cidrs = unpruned.get(this.asns[current]).getCIDRSize();
+			for (int adj = custOffsets[current]; adj < custOffsets[current + 1]; adj++) {
+				level = Math.max(level, this.pruneLevel[customers[adj]] + 1);
+				cidrs += this.rolledCIDRs[customers[adj]];
+			}
+			this.pruneLevel[current] = level;
+			this.rolledCIDRs[current] = cidrs;
+			this.maxPruneLevel = Math.max(this.maxPruneLevel, level);
+
+			for (int adj = provOffsets[current]; adj < provOffsets[current + 1]; adj++) {
+				customersLeft[providers[adj]]--;
+				if (customersLeft[providers[adj]] == 0) {
+					peelQueue[queueTail] = providers[adj];
+					queueTail++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds a fresh set of AS objects for the topology pruned the given number
+	 * of times. This matches pruning level by level: ASes with a prune level
+	 * at or below the depth are gone, and each surviving AS has the CIDRs of
+	 * its pruned customers rolled into it.
+	 *
+	 * @param depth
+	 *            - number of prune passes, 0 returns a copy of the unpruned
+	 *            topology
+	 * @return - the ASN to AS mapping of the pruned topology
+	 */
+	public HashMap<Integer, AS> materialize(int depth) {
+		HashMap<Integer, AS> prunedMap = new HashMap<Integer, AS>(this.countSurvivors(depth) * 4 / 3 + 1);
+		for (int counter = 0; counter < this.asns.length; counter++) {
+			if (this.pruneLevel[counter] > depth) {
+				prunedMap.put(this.asns[counter], new AS(this.asns[counter], this.unprunedTopo.get(this.asns[counter])
+						.getCIDRSize()));
+			}
+		}
+
+		/*
+		 * Fill in relationships between survivors, providers are covered from
+		 * the customer side, and peers from the lower ASN side
+		 */
+		for (AS newAS : prunedMap.values()) {
+			AS oldAS = this.unprunedTopo.get(newAS.getASN());
+			for (int tCust : oldAS.getCustomers()) {
+				AS custAS = prunedMap.get(tCust);
+				if (custAS == null) {
+					newAS.setCIDRSize(newAS.getCIDRSize() + this.rolledCIDRs[this.indexOf(tCust)]);
+				} else {
+					newAS.addCustomer(custAS);
+				}
+			}
+			for (int tPeer : oldAS.getPeers()) {
+				AS peerAS = prunedMap.get(tPeer);
+				if (peerAS != null && tPeer > newAS.getASN()) {
+					newAS.addPeer(peerAS);
+				}
+			}
+		}
+
+		return prunedMap;
+	}
+
+	/**
+	 * Fetches the prune level at which an AS disappears.
+	 *
+	 * @param asn
+	 *            - the ASN in question
+	 * @return - the first prune depth that removes the AS, NEVER_PRUNED if no
+	 *         depth does
+	 */
+	public int getPruneLevel(int asn) {
+		return this.pruneLevel[this.indexOf(asn)];
+	}
+
+	/**
+	 * Fetches the deepest prune level that still removes anything, pruning
+	 * deeper than this gives the same topology.
+	 *
+	 * @return - the deepest meaningful prune depth
+	 */
+	public int getMaxPruneLevel() {
+		return this.maxPruneLevel;
+	}
+
+	/**
+	 * Counts the ASes that survive a given prune depth.
+	 *
+	 * @param depth
+	 *            - the number of prune passes
+	 * @return - the size of the pruned topology
+	 */
+	public int countSurvivors(int depth) {
+		int count = 0;
+		for (int tLevel : this.pruneLevel) {
+			if (tLevel > depth) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private int indexOf(int asn) {
+		return Arrays.binarySearch(this.asns, asn);
+	}
+}
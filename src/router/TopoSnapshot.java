@@ -0,0 +1,306 @@
+package router;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Compiled binary form of a topology (relationship file + CIDR count file).
+ * Topologies like pruned-weighted-internet never change, so rather than
+ * re-parsing the text every run they can be compiled once and then loaded
+ * through a memory mapped buffer.
+ *
+ * Layout, all values big endian:
+ *
+ * <pre>
+ * int   magic ("TWTS")
+ * int   format version
+ * long  rel file size, long rel file last modified
+ * long  ip file size, long ip file last modified (-1 if there was no ip file)
+ * int   AS count (n), int adjacency entry count (m)
+ * int[n]   ASNs, ascending, an AS's position here is its dense index
+ * int[n]   CIDR counts
+ * int[n+1] CSR row offsets into the adjacency arrays
+ * int[m]   neighbor dense indices
+ * byte[m]  what the neighbor is to the row AS (REL_* codes below)
+ * </pre>
+ *
+ * The source file sizes and modification times are recorded so a snapshot
+ * can be checked for freshness against the text files it was built from.
+ *
+ * @author pendgaft
+ *
+ */
+public class TopoSnapshot {
+
+	private static final int MAGIC = 0x54575453;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 4 + 4 + 8 * 4 + 4 + 4;
+
+	private static final byte REL_CUSTOMER = 0;
+	private static final byte REL_PEER = 1;
+	private static final byte REL_PROVIDER = 2;
+
+	public static final String SNAPSHOT_SUFFIX = ".snap";
+
+	/**
+	 * Topology compiler, parses the text files and writes out the snapshot.
+	 *
+	 * @param args
+	 *            - relationship file, cidr count file, and optionally the
+	 *            snapshot file (defaults to the rel file + .snap)
+	 * @throws IOException
+	 *             - if the files can't be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("usage: TopoSnapshot <rel file> <ip file> [snapshot file]");
+			System.exit(-1);
+		}
+
+		String snapFile = TopoSnapshot.defaultSnapshotName(args[0]);
+		if (args.length > 2) {
+			snapFile = args[2];
+		}
+
+		ASTopoParser parser = new ASTopoParser(args[0], args[1], false);
+		HashMap<Integer, AS> topo = parser.parseTextFiles();
+		long start = System.currentTimeMillis();
+		TopoSnapshot.write(topo, args[0], args[1], snapFile);
+		System.out.println("Wrote " + snapFile + " (" + topo.size() + " ASes) in "
+				+ (System.currentTimeMillis() - start) + " ms.");
+	}
+
+	/**
+	 * Name we expect the snapshot of a relationship file to live under.
+	 *
+	 * @param relFile
+	 *            - the relationship file name
+	 * @return - the snapshot file name
+	 */
+	public static String defaultSnapshotName(String relFile) {
+		return relFile + TopoSnapshot.SNAPSHOT_SUFFIX;
+	}
+
+	/**
+	 * Writes a topology out as a snapshot.
+	 *
+	 * @param topo
+	 *            - the ASN to AS mapping to write
+	 * @param relFile
+	 *            - the relationship file the topology came from
+	 * @param ipFile
+	 *            - the cidr count file the topology came from, can be null
+	 * @param snapFile
+	 *            - where to write the snapshot
+	 * @throws IOException
+	 *             - if there is an error writing the file
+	 */
+	public static void write(HashMap<Integer, AS> topo, String relFile, String ipFile, String snapFile)
+			throws IOException {
+		/*
+		 * Build the dense ASN table
+		 */
+		int[] asns = new int[topo.size()];
+		int pos = 0;
+		for (int tASN : topo.keySet()) {
+			asns[pos] = tASN;
+			pos++;
+		}
+		Arrays.sort(asns);
+
+		int adjCount = 0;
+		for (AS tAS : topo.values()) {
+			adjCount += tAS.getCustomers().size() + tAS.getPeers().size() + tAS.getProviders().size();
+		}
+
+		DataOutputStream outStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(snapFile)));
+		try {
+			outStream.writeInt(TopoSnapshot.MAGIC);
+			outStream.writeInt(TopoSnapshot.VERSION);
+			TopoSnapshot.writeSourceStamp(outStream, relFile);
+			TopoSnapshot.writeSourceStamp(outStream, ipFile);
+			outStream.writeInt(asns.length);
+			outStream.writeInt(adjCount);
+
+			for (int tASN : asns) {
+				outStream.writeInt(tASN);
+			}
+			for (int tASN : asns) {
+				outStream.writeInt(topo.get(tASN).getCIDRSize());
+			}
+
+			/*
+			 * CSR offsets, then the neighbor indices and relationship codes in
+			 * the same order
+			 */
+			int offset = 0;
+			outStream.writeInt(offset);
+			for (int tASN : asns) {
+				AS tAS = topo.get(tASN);
+				offset += tAS.getCustomers().size() + tAS.getPeers().size() + tAS.getProviders().size();
+				outStream.writeInt(offset);
+			}
+			byte[] relCodes = new byte[adjCount];
+			pos = 0;
+			for (int tASN : asns) {
+				AS tAS = topo.get(tASN);
+				pos = TopoSnapshot.writeNeighbors(outStream, asns, tAS.getCustomers(), relCodes, pos,
+						TopoSnapshot.REL_CUSTOMER);
+				pos = TopoSnapshot.writeNeighbors(outStream, asns, tAS.getPeers(), relCodes, pos,
+						TopoSnapshot.REL_PEER);
+				pos = TopoSnapshot.writeNeighbors(outStream, asns, tAS.getProviders(), relCodes, pos,
+						TopoSnapshot.REL_PROVIDER);
+			}
+			outStream.write(relCodes);
+		} finally {
+			outStream.close();
+		}
+	}
+
+	/**
+	 * Predicate to test if a snapshot exists and was built from the current
+	 * versions of the text files.
+	 *
+	 * @param snapFile
+	 *            - the snapshot file
+	 * @param relFile
+	 *            - the relationship file
+	 * @param ipFile
+	 *            - the cidr count file, can be null
+	 * @return - true if the snapshot can be loaded in place of the text files
+	 */
+	public static boolean isFresh(String snapFile, String relFile, String ipFile) {
+		File snap = new File(snapFile);
+		if (!snap.isFile() || snap.length() < TopoSnapshot.HEADER_SIZE) {
+			return false;
+		}
+
+		try {
+			DataInputStream inStream = new DataInputStream(new BufferedInputStream(new FileInputStream(snap)));
+			try {
+				if (inStream.readInt() != TopoSnapshot.MAGIC || inStream.readInt() != TopoSnapshot.VERSION) {
+					return false;
+				}
+				return TopoSnapshot.matchesSourceStamp(inStream, relFile)
+						&& TopoSnapshot.matchesSourceStamp(inStream, ipFile);
+			} finally {
+				inStream.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Loads a snapshot back into AS objects.
+	 *
+	 * @param snapFile
+	 *            - the snapshot file
+	 * @return - the global ASN to AS object map
+	 * @throws IOException
+	 *             - if the file can't be read or isn't a snapshot we
+	 *             understand
+	 */
+	public static HashMap<Integer, AS> read(String snapFile) throws IOException {
+		RandomAccessFile inFile = new RandomAccessFile(snapFile, "r");
+		try {
+			FileChannel inChannel = inFile.getChannel();
+			ByteBuffer snapBuffer = inChannel.map(FileChannel.MapMode.READ_ONLY, 0, inChannel.size());
+
+			if (snapBuffer.getInt() != TopoSnapshot.MAGIC) {
+				throw new IOException("Not a topology snapshot: " + snapFile);
+			}
+			int version = snapBuffer.getInt();
+			if (version != TopoSnapshot.VERSION) {
+				throw new IOException("Unsupported topology snapshot version " + version + ": " + snapFile);
+			}
+			snapBuffer.position(snapBuffer.position() + 8 * 4);
+			int asCount = snapBuffer.getInt();
+			int adjCount = snapBuffer.getInt();
+
+			/*
+			 * Bulk pull the int sections, then the relationship bytes
+			 */
+			IntBuffer intView = snapBuffer.asIntBuffer();
+			int[] asns = new int[asCount];
+			int[] cidrs = new int[asCount];
+			int[] offsets = new int[asCount + 1];
+			int[] neighbors = new int[adjCount];
+			intView.get(asns);
+			intView.get(cidrs);
+			intView.get(offsets);
+			intView.get(neighbors);
+			snapBuffer.position(snapBuffer.position() + intView.position() * 4);
+			byte[] relCodes = new byte[adjCount];
+			snapBuffer.get(relCodes);
+
+			/*
+			 * Build the AS objects, each edge shows up once per side, only
+			 * add it from the lower index side since adding handles symmetry
+			 */
+			AS[] denseAS = new AS[asCount];
+			HashMap<Integer, AS> retMap = new HashMap<Integer, AS>(asCount * 4 / 3 + 1);
+			for (int counter = 0; counter < asCount; counter++) {
+				denseAS[counter] = new AS(asns[counter], cidrs[counter]);
+				retMap.put(asns[counter], denseAS[counter]);
+			}
+			for (int counter = 0; counter < asCount; counter++) {
+				for (int adj = offsets[counter]; adj < offsets[counter + 1]; adj++) {
+					int other = neighbors[adj];
+					if (other < counter) {
+						continue;
+					}
+
+					if (relCodes[adj] == TopoSnapshot.REL_CUSTOMER) {
+						denseAS[counter].addCustomer(denseAS[other]);
+					} else if (relCodes[adj] == TopoSnapshot.REL_PEER) {
+						denseAS[counter].addPeer(denseAS[other]);
+					} else if (relCodes[adj] == TopoSnapshot.REL_PROVIDER) {
+						denseAS[counter].addProvider(denseAS[other]);
+					} else {
+						throw new IOException("Bad relationship code " + relCodes[adj] + " in " + snapFile);
+					}
+				}
+			}
+
+			return retMap;
+		} finally {
+			inFile.close();
+		}
+	}
+
+	private static int writeNeighbors(DataOutputStream outStream, int[] asns, Set<Integer> neighbors,
+			byte[] relCodes, int pos, byte relCode) throws IOException {
+		for (int tASN : neighbors) {
+			outStream.writeInt(Arrays.binarySearch(asns, tASN));
+			relCodes[pos] = relCode;
+			pos++;
+		}
+		return pos;
+	}
+
+	private static void writeSourceStamp(DataOutputStream outStream, String fileName) throws IOException {
+		if (fileName == null) {
+			outStream.writeLong(-1);
+			outStream.writeLong(-1);
+		} else {
+			File srcFile = new File(fileName);
+			outStream.writeLong(srcFile.length());
+			outStream.writeLong(srcFile.lastModified());
+		}
+	}
+
+	private static boolean matchesSourceStamp(DataInputStream inStream, String fileName) throws IOException {
+		long size = inStream.readLong();
+		long modified = inStream.readLong();
+		if (fileName == null) {
+			return size == -1 && modified == -1;
+		}
+
+		File srcFile = new File(fileName);
+		return srcFile.isFile() && srcFile.length() == size && srcFile.lastModified() == modified;
+	}
+}
@@ -4,6 +4,7 @@ public class Constants {
 
 	
 	public static final String BASE_LOG_DIR = "logs/";
+	public static final String TOPO_CACHE_DIR = Constants.BASE_LOG_DIR + "topo-cache/";
 	
 	
 	
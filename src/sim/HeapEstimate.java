@@ -0,0 +1,71 @@
+package sim;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import router.HeapFootprint;
+import net.sourceforge.argparse4j.inf.*;
+import net.sourceforge.argparse4j.*;
+import net.sourceforge.argparse4j.impl.Arguments;
+
+/**
+ * Tool that builds and seeds a topology the same way ThunderWolf does, runs
+ * it to the end, and reports the heap the speakers' RIBs and queues hold,
+ * by structure, and whether they fit in a given -Xmx. Run it on a pruned
+ * topology and scale by the bytes per adj in RIB route to size a bigger one
+ * before launching it.
+ *
+ * @author pendgaft
+ *
+ */
+public class HeapEstimate extends ThunderWolf {
+
+	public static void main(String[] args) throws IOException {
+		ArgumentParser argParse = ArgumentParsers.newArgumentParser("HeapEstimate").description(
+				"Estimates the heap held by each speaker's RIBs and update queues.");
+		argParse.addArgument("-m", "--mode").help("sim mode").required(true).type(ThunderWolf.Mode.class);
+		argParse.addArgument("-t", "--topo").help("topo file base name").required(true);
+		argParse.addArgument("-x", "--xmx").help("heap size to judge against in MB, defaults to this JVM's max heap")
+				.type(Long.class);
+		argParse.addArgument("-o", "--out").help("also write each speaker's bytes by structure to this CSV");
+		argParse.addArgument("--norun").help("measure right after seeding, without running the simulation")
+				.action(Arguments.storeTrue());
+
+		Namespace ns = null;
+		try {
+			ns = argParse.parseArgs(args);
+		} catch (ArgumentParserException e1) {
+			argParse.handleError(e1);
+			System.exit(-1);
+		}
+
+		HeapEstimate me = new HeapEstimate(ns);
+		if (!ns.getBoolean("norun")) {
+			me.runSimulation();
+		}
+
+		long maxHeap = Runtime.getRuntime().maxMemory();
+		if (ns.getLong("xmx") != null) {
+			maxHeap = ns.getLong("xmx") * 1000000L;
+		}
+		HeapFootprint footprint = new HeapFootprint();
+		footprint.measure(me.routerMap.values());
+		System.out.println(footprint.buildReport(maxHeap));
+
+		/*
+		 * The real heap in use is a sanity check on the estimate, it also
+		 * holds the topology, the event queue and everything else
+		 */
+		System.gc();
+		System.out.println(String.format("JVM heap in use after GC: %.2f MB", ManagementFactory.getMemoryMXBean()
+				.getHeapMemoryUsage().getUsed() / 1000000.0));
+
+		if (ns.getString("out") != null) {
+			footprint.writeCSV(ns.getString("out"));
+		}
+	}
+
+	private HeapEstimate(Namespace ns) throws IOException {
+		super(ns);
+	}
+}
@@ -4,12 +4,15 @@ import java.util.*;
 import java.io.*;
 
 import logging.SimLogger;
+import logging.StatCollectorRegistry;
 import router.BGPSpeaker;
 import router.ASTopoParser;
 import networkConfig.*;
 import threading.FlowDriver;
+import threading.SimMonitor;
 import net.sourceforge.argparse4j.inf.*;
 import net.sourceforge.argparse4j.*;
+import net.sourceforge.argparse4j.impl.Arguments;
 
 public class ThunderWolf {
 
@@ -39,6 +42,17 @@ public class ThunderWolf {
 		ArgumentParser argParse = ArgumentParsers.newArgumentParser("nightwing");
 		argParse.addArgument("-m", "--mode").help("sim mode").required(true).type(ThunderWolf.Mode.class);
 		argParse.addArgument("-t", "--topo").help("topo file base name").required(true);
+		argParse.addArgument("-l", "--logformat").help("stat log format").type(SimLogger.LogFormat.class)
+				.setDefault(SimLogger.LogFormat.CSV);
+		argParse.addArgument("-s", "--stats").help("per router stats to log, from " + StatCollectorRegistry.getNames())
+				.nargs("+").metavar("STAT").choices(StatCollectorRegistry.getNames());
+		argParse.addArgument("--routercosts").help("count the work done by and time charged to each router")
+				.action(Arguments.storeTrue());
+		argParse.addArgument("--jmx").help("publish live progress over JMX as " + SimMonitor.OBJECT_NAME)
+				.action(Arguments.storeTrue());
+		argParse.addArgument("--timing").help("time each simulation phase and worker").action(Arguments.storeTrue());
+		argParse.addArgument("--jvmstats").help("log allocations per phase and thread and GC activity to jvm.csv")
+				.action(Arguments.storeTrue());
 
 		/*
 		 * Actually parse
@@ -70,6 +84,18 @@ public class ThunderWolf {
 		this.ns = ns;
 		this.topoBase = this.ns.getString("topo");
 		this.myMode = ns.get("mode");
+		if (this.ns.getBoolean("timing") != null) {
+			FlowDriver.PHASE_TIMING = this.ns.getBoolean("timing");
+		}
+		if (this.ns.getBoolean("jvmstats") != null) {
+			FlowDriver.JVM_STATS = this.ns.getBoolean("jvmstats");
+		}
+		if (this.ns.getBoolean("jmx") != null) {
+			FlowDriver.JMX_MONITOR = this.ns.getBoolean("jmx");
+		}
+		if (this.ns.getBoolean("routercosts") != null) {
+			BGPSpeaker.COST_ACCOUNTING = this.ns.getBoolean("routercosts");
+		}
 
 		/*
 		 * Longs used to store wall clock times for speed reporting
@@ -82,6 +108,7 @@ public class ThunderWolf {
 		System.out.println("Creating router topology.");
 		start = System.currentTimeMillis();
 		ASTopoParser topoParse = new ASTopoParser(this.topoBase + "-rel.txt", this.topoBase + "-ip.txt", true);
+		topoParse.setCacheDir(Constants.TOPO_CACHE_DIR);
 
 		if (this.myMode == Mode.REAL) {
 			//XXX currently the real file is pruned
@@ -114,7 +141,13 @@ public class ThunderWolf {
 		 * Build logging mechanisms
 		 */
 		try {
-			this.logMaster = new SimLogger(this.buildLogFileBase(), this.routerMap);
+			SimLogger.LogFormat logFormat = this.ns.get("logformat");
+			if (logFormat == null) {
+				logFormat = SimLogger.LogFormat.CSV;
+			}
+			List<String> statNames = this.ns.getList("stats");
+			this.logMaster = new SimLogger(this.buildLogFileBase(), this.routerMap, logFormat,
+					StatCollectorRegistry.lookup(statNames));
 			this.logMaster.setupStatPush();
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -1,18 +1,25 @@
 package threading;
 
+import java.io.*;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.HashMap;
 import java.util.concurrent.*;
 
+import javax.management.JMException;
+
+import logging.JVMStatLog;
+import logging.RouterCostReport;
 import logging.SimLogger;
+import profiling.BarrierPhaseEvent;
+import profiling.LogEpochEvent;
 import router.BGPSpeaker;
 import events.*;
 
 public class FlowDriver implements Runnable {
 
 	private HashMap<Integer, BGPSpeaker> topo;
-	private PriorityBlockingQueue<SimEvent> eventQueue;
+	private SimEventQueue eventQueue;
 
 	private double timeToMoveTo;
 
@@ -23,6 +30,14 @@ public class FlowDriver implements Runnable {
 	private Semaphore processUpdateSem;
 
 	private SimLogger logMaster;
+	private boolean statGatherRound;
+
+	private ThreadWorker[] workers;
+	private PhaseTimer driverTimer;
+	private long roundCount;
+	private SimMonitor monitor;
+	private ThroughputTracker throughput;
+	private JVMStatLog jvmLog;
 
 	private static int NUMBER_OF_THREADS = 1;
 	private static final double MAX_SIM_TIME = 120000.0;
@@ -35,6 +50,25 @@ public class FlowDriver implements Runnable {
 	//XXX consider saner way to pass this in
 	public static int SIM_END_MODE = FlowDriver.WORK_SIM_END;
 
+	/**
+	 * Turns on the per phase timers in the driver and workers, reported with
+	 * the progress output and written to the log directory at the end of the
+	 * run
+	 */
+	public static boolean PHASE_TIMING = false;
+
+	/**
+	 * Publishes a SimMonitor over JMX so a run can be watched live
+	 */
+	public static boolean JMX_MONITOR = false;
+
+	/**
+	 * Counts the bytes allocated in each phase by each thread and logs them,
+	 * along with GC activity, to jvm.csv in the log directory every logging
+	 * epoch
+	 */
+	public static boolean JVM_STATS = false;
+
 	public static final int TIMED_SIM_END = 1;
 	public static final int WORK_SIM_END = 2;
 
@@ -54,7 +88,7 @@ public class FlowDriver implements Runnable {
 		System.out.println("Building flow driver with " + FlowDriver.NUMBER_OF_THREADS + " theads.");
 
 		this.topo = routingTopology;
-		this.eventQueue = new PriorityBlockingQueue<SimEvent>();
+		this.eventQueue = new SimEventQueue(this.topo.size() * 2 + 1);
 		this.timeToMoveTo = 0.0;
 
 		this.blockOnChildSem = new Semaphore(0);
@@ -63,9 +97,43 @@ public class FlowDriver implements Runnable {
 		this.eventUpdateSem = new Semaphore(0);
 		this.processUpdateSem = new Semaphore(0);
 		this.logMaster = logs;
+		this.statGatherRound = false;
+		this.driverTimer = new PhaseTimer(FlowDriver.PHASE_TIMING, FlowDriver.JVM_STATS);
+		this.roundCount = 0;
+		this.monitor = null;
+		if (FlowDriver.JMX_MONITOR) {
+			this.monitor = new SimMonitor();
+			try {
+				this.monitor.register();
+				System.out.println("JMX monitor registered as " + SimMonitor.OBJECT_NAME);
+			} catch (JMException e) {
+				e.printStackTrace();
+				System.out.println("JMX monitor setup failed, running without it.");
+				this.monitor = null;
+			}
+		}
 
 		this.seedInitialEvents();
 		this.buildChildren();
+
+		this.jvmLog = null;
+		if (FlowDriver.JVM_STATS) {
+			if (!PhaseTimer.allocationCountingSupported()) {
+				System.out.println("This JVM can't count allocations, jvm.csv allocation columns will be 0.");
+			}
+			String[] threadNames = new String[this.workers.length + 1];
+			threadNames[0] = "driver";
+			for (int counter = 0; counter < this.workers.length; counter++) {
+				threadNames[counter + 1] = "worker" + counter;
+			}
+			try {
+				this.jvmLog = new JVMStatLog(this.logMaster.getLogDir() + File.separator + "jvm.csv",
+						PhaseTimer.PHASE_NAMES, threadNames);
+			} catch (IOException e) {
+				e.printStackTrace();
+				System.exit(-2);
+			}
+		}
 	}
 
 	/**
@@ -83,6 +151,7 @@ public class FlowDriver implements Runnable {
 	private void buildChildren() {
 
 		ThreadWorker[] tChildren = new ThreadWorker[FlowDriver.NUMBER_OF_THREADS];
+		this.workers = tChildren;
 		for (int counter = 0; counter < FlowDriver.NUMBER_OF_THREADS; counter++) {
 			tChildren[counter] = new ThreadWorker(this, counter);
 			Thread tThread = new Thread(tChildren[counter]);
@@ -102,14 +171,37 @@ public class FlowDriver implements Runnable {
 
 		long simStartTime = System.currentTimeMillis();
 		long lastReport = System.currentTimeMillis();
+		long lastPublish = lastReport;
+		long lastSample = lastReport;
+		this.throughput = new ThroughputTracker(simStartTime, this.eventQueue.countBefore(Long.MAX_VALUE));
+
+		/*
+		 * Everything the driver does outside of the worker phases (including
+		 * the done check) is charged to the driver
+		 */
+		long mark = this.driverTimer.start();
 		while (!this.simFinished()) {
 			long currentTime = System.currentTimeMillis();
+			if (currentTime - lastSample >= ThroughputTracker.SAMPLE_INTERVAL) {
+				lastSample = currentTime;
+				this.throughput.sample(currentTime, this.timeToMoveTo, this.eventQueue.countBefore(Long.MAX_VALUE));
+			}
 			if (currentTime - lastReport >= FlowDriver.REPORTING_WINDOW) {
 				lastReport = currentTime;
 				this.logMaster.printToConsole(lastReport - simStartTime, this.timeToMoveTo);
+				System.out.println(this.throughput.buildReport());
+				if (this.driverTimer.isEnabled()) {
+					System.out.println(this.buildTimingReport());
+				}
+			}
+			if (this.monitor != null && currentTime - lastPublish >= SimMonitor.PUBLISH_WINDOW) {
+				lastPublish = currentTime;
+				this.monitor.publish(currentTime - simStartTime, this.timeToMoveTo, this.roundCount,
+						this.topo.values(), this.driverTimer);
 			}
 
 			SimEvent nextEvent = this.eventQueue.poll();
+			this.throughput.countEvent(nextEvent.getEventType());
 
 			if (FlowDriver.DEBUG_EVENTS) {
 				System.out.println(nextEvent.toString());
@@ -130,24 +222,60 @@ public class FlowDriver implements Runnable {
 				throw new RuntimeException("Attempted to time travel.");
 			}
 			this.timeToMoveTo = nextEvent.getEventTime();
-			this.runForwardSem.release(FlowDriver.NUMBER_OF_THREADS);
-			this.blockOnChildren();
+			this.roundCount++;
+			mark = this.driverTimer.lap(PhaseTimer.DRIVER, mark);
+			this.runPhase(this.runForwardSem, PhaseTimer.ADVANCE);
+			mark = this.driverTimer.lap(PhaseTimer.ADVANCE, mark);
 
-			this.scanQueueSem.release(FlowDriver.NUMBER_OF_THREADS);
-			this.blockOnChildren();
+			this.runPhase(this.scanQueueSem, PhaseTimer.SCAN_QUEUE);
+			mark = this.driverTimer.lap(PhaseTimer.SCAN_QUEUE, mark);
 
 			/*
 			 * Deal with any special event activity, and then repopoulate the
-			 * event
+			 * event. Logging is the exception, the workers gather stats for
+			 * their own routers during the event adjust phase, and we only
+			 * hand the result off once they're done.
 			 */
-			nextEvent.handleEvent(this.logMaster);
+			this.statGatherRound = (nextEvent.getEventType() == SimEvent.LOGGING_EVENT);
+			LogEpochEvent epochEvent = null;
+			if (this.statGatherRound) {
+				epochEvent = new LogEpochEvent();
+				epochEvent.begin();
+				this.logMaster.beginGather();
+			} else {
+				nextEvent.handleEvent(this.logMaster);
+			}
 			this.eventQueue.put(nextEvent.repopulate());
+			mark = this.driverTimer.lap(PhaseTimer.DRIVER, mark);
 			
-			this.eventUpdateSem.release(FlowDriver.NUMBER_OF_THREADS);
-			this.blockOnChildren();
+			this.runPhase(this.eventUpdateSem, PhaseTimer.EVENT_UPDATE);
+			mark = this.driverTimer.lap(PhaseTimer.EVENT_UPDATE, mark);
+			if (this.statGatherRound) {
+				for (ThreadWorker tWorker : this.workers) {
+					this.logMaster.mergeConsoleStats(tWorker.getConsoleStats());
+				}
+				try {
+					this.logMaster.finishGather();
+				} catch (IOException e) {
+					e.printStackTrace();
+					System.exit(-2);
+				}
+				epochEvent.finish(this.timeToMoveTo, this.topo.size());
+				if (this.jvmLog != null) {
+					this.logJVMStats();
+				}
+			}
+			mark = this.driverTimer.lap(PhaseTimer.DRIVER, mark);
 
-			this.processUpdateSem.release(FlowDriver.NUMBER_OF_THREADS);
-			this.blockOnChildren();
+			this.runPhase(this.processUpdateSem, PhaseTimer.PROCESS_UPDATE);
+			mark = this.driverTimer.lap(PhaseTimer.PROCESS_UPDATE, mark);
+		}
+		this.driverTimer.lap(PhaseTimer.DRIVER, mark);
+		this.throughput.sample(System.currentTimeMillis(), this.timeToMoveTo, this.eventQueue
+				.countBefore(Long.MAX_VALUE));
+		if (this.monitor != null) {
+			this.monitor.publish(System.currentTimeMillis() - simStartTime, this.timeToMoveTo, this.roundCount,
+					this.topo.values(), this.driverTimer);
 		}
 
 		/*
@@ -159,11 +287,122 @@ public class FlowDriver implements Runnable {
 				System.out.println("active count for " + tRouter.getASN() + " is " + tRouter.countActiveQueues(-1));
 			}
 		}
+		try {
+			this.logMaster.doneLogging();
+			if (this.jvmLog != null) {
+				this.jvmLog.close();
+			}
+			if (this.driverTimer.isEnabled()) {
+				this.writeTimingReport();
+			}
+			if (BGPSpeaker.COST_ACCOUNTING) {
+				RouterCostReport costReport = new RouterCostReport(this.topo.values());
+				System.out.println(costReport.buildTopReport(RouterCostReport.TOP_N));
+				costReport.writeCSV(this.logMaster.getLogDir() + File.separator + "routerCosts.csv");
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(-2);
+		}
+		System.out.println(this.throughput.buildReport());
 		System.out.println("Simulation ran to: " + this.timeToMoveTo + " simulated wall time.");
 		System.out
 				.println("This took: " + (double) (System.currentTimeMillis() - simStartTime) / 60000.0 + " minutes.");
 	}
 
+	/**
+	 * Totals the allocation counts of the driver and workers by phase and by
+	 * thread and hands them to the JVM stat log. Only call this while the
+	 * workers are blocked.
+	 */
+	private void logJVMStats() {
+		long[] phaseBytes = new long[PhaseTimer.PHASE_NAMES.length];
+		long[] threadBytes = new long[this.workers.length + 1];
+		for (int counter = 0; counter <= this.workers.length; counter++) {
+			PhaseTimer tTimer;
+			if (counter == 0) {
+				tTimer = this.driverTimer;
+			} else {
+				tTimer = this.workers[counter - 1].getTimer();
+			}
+			for (int phase = 0; phase < phaseBytes.length; phase++) {
+				phaseBytes[phase] += tTimer.getAllocatedBytes(phase);
+				threadBytes[counter] += tTimer.getAllocatedBytes(phase);
+			}
+		}
+		try {
+			this.jvmLog.logEpoch(this.timeToMoveTo, phaseBytes, threadBytes);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(-2);
+		}
+	}
+
+	/**
+	 * Builds the phase timing report, for each phase the wall time the driver
+	 * saw, the busy time of the average and slowest worker, and the share of
+	 * worker time in the phase that was spent waiting at the barrier for the
+	 * slowest. Only call this while the workers are blocked.
+	 * 
+	 * @return - the report, over the whole run so far
+	 */
+	private String buildTimingReport() {
+		StringBuilder strBuild = new StringBuilder();
+		double totalMillis = 0.0;
+		for (int phase = 0; phase <= PhaseTimer.DRIVER; phase++) {
+			totalMillis += this.driverTimer.getMillis(phase);
+		}
+		strBuild.append("Phase timing over " + this.roundCount + " rounds, " + String.format("%.1f", totalMillis)
+				+ " ms total, " + String.format("%.2f", totalMillis * 1000.0 / Math.max(1, this.roundCount))
+				+ " us per round\n");
+
+		for (int phase = 0; phase < PhaseTimer.WORKER_PHASE_COUNT; phase++) {
+			double wall = this.driverTimer.getMillis(phase);
+			double busySum = 0.0;
+			double busyMax = 0.0;
+			for (ThreadWorker tWorker : this.workers) {
+				double busy = tWorker.getTimer().getMillis(phase);
+				busySum += busy;
+				busyMax = Math.max(busyMax, busy);
+			}
+			double barrierWait = 0.0;
+			if (wall > 0.0) {
+				barrierWait = Math.max(0.0, 1.0 - busySum / (wall * this.workers.length));
+			}
+			strBuild.append(String.format("  %-13s wall %10.1f ms  busy avg %10.1f ms  max %10.1f ms  barrier wait %5.1f%%\n",
+					PhaseTimer.PHASE_NAMES[phase], wall, busySum / this.workers.length, busyMax, barrierWait * 100.0));
+		}
+		strBuild.append(String.format("  %-13s wall %10.1f ms\n", PhaseTimer.PHASE_NAMES[PhaseTimer.DRIVER],
+				this.driverTimer.getMillis(PhaseTimer.DRIVER)));
+
+		for (ThreadWorker tWorker : this.workers) {
+			PhaseTimer tTimer = tWorker.getTimer();
+			double busy = 0.0;
+			for (int phase = 0; phase < PhaseTimer.WORKER_PHASE_COUNT; phase++) {
+				busy += tTimer.getMillis(phase);
+			}
+			double idle = tTimer.getMillis(PhaseTimer.WAIT);
+			strBuild.append(String.format("  worker %-6d busy %10.1f ms  idle %10.1f ms  (%.1f%% busy)\n",
+					tWorker.getID(), busy, idle, busy * 100.0 / Math.max(busy + idle, Double.MIN_VALUE)));
+		}
+		return strBuild.toString();
+	}
+
+	/**
+	 * Writes the final phase timing report to the log directory.
+	 * 
+	 * @throws IOException
+	 *             - if the file can't be written
+	 */
+	private void writeTimingReport() throws IOException {
+		String report = this.buildTimingReport();
+		System.out.println(report);
+		BufferedWriter outFile = new BufferedWriter(new FileWriter(this.logMaster.getLogDir() + File.separator
+				+ "phaseTiming.txt"));
+		outFile.write(report);
+		outFile.close();
+	}
+
 	private boolean simFinished() {
 		if (FlowDriver.SIM_END_MODE == FlowDriver.TIMED_SIM_END) {
 			return this.timeSimFinished();
@@ -174,6 +413,23 @@ public class FlowDriver implements Runnable {
 		}
 	}
 
+	/**
+	 * Releases the workers into a phase and waits for all of them to finish
+	 * it.
+	 * 
+	 * @param phaseSem
+	 *            - the semaphore the workers wait on for this phase
+	 * @param phase
+	 *            - the PhaseTimer phase, for the JFR event
+	 */
+	private void runPhase(Semaphore phaseSem, int phase) {
+		BarrierPhaseEvent jfrEvent = new BarrierPhaseEvent();
+		jfrEvent.begin();
+		phaseSem.release(FlowDriver.NUMBER_OF_THREADS);
+		this.blockOnChildren();
+		jfrEvent.finish(PhaseTimer.PHASE_NAMES[phase], this.roundCount, this.timeToMoveTo);
+	}
+
 	private void blockOnChildren() {
 		try {
 			this.blockOnChildSem.acquire(FlowDriver.NUMBER_OF_THREADS);
@@ -196,9 +452,17 @@ public class FlowDriver implements Runnable {
 		return true;
 	}
 
-	public void replaceProcessEvent(ProcessEvent oldEvent, ProcessEvent newEvent) {
-		this.eventQueue.remove(oldEvent);
-		this.eventQueue.add(newEvent);
+	/**
+	 * Moves a router's process event to a new time in place, the event stays
+	 * in the queue the whole time.
+	 * 
+	 * @param procEvent
+	 *            - the router's process event
+	 * @param newTime
+	 *            - the simulated time the event should now fire at
+	 */
+	public void rescheduleProcessEvent(ProcessEvent procEvent, double newTime) {
+		this.eventQueue.reschedule(procEvent, newTime);
 	}
 
 	public double getNextTimeAdvnace() throws InterruptedException {
@@ -214,6 +478,21 @@ public class FlowDriver implements Runnable {
 		this.eventUpdateSem.acquire();
 	}
 
+	/**
+	 * Predicate to test if the workers should gather their routers' stats in
+	 * this round's event adjust phase, only valid after waitForEventAdjust
+	 * returns.
+	 * 
+	 * @return - true if this round is a logging epoch
+	 */
+	public boolean isStatGatherRound() {
+		return this.statGatherRound;
+	}
+
+	public SimLogger getLogger() {
+		return this.logMaster;
+	}
+
 	public void waitForProcessEventUpdate() throws InterruptedException {
 		this.processUpdateSem.acquire();
 	}
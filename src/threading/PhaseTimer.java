@@ -0,0 +1,165 @@
+package threading;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Accumulates wall clock time spent in each phase of a simulation round. The
+ * driver keeps one for the wall time of each phase (release to the last
+ * worker reporting back) plus its own serial work between phases, each worker
+ * keeps one for the time it was busy in each phase plus the time it spent
+ * blocked waiting to be released.
+ *
+ * Timing is done by chaining laps, each call to lap closes one interval and
+ * returns the start of the next, so there is exactly one clock read per phase
+ * boundary. When timing is disabled lap does not touch the clock at all.
+ *
+ * The timer can also charge the bytes the owning thread allocates to each
+ * phase, using the HotSpot per thread allocation counter. This is off unless
+ * asked for, as reading the counter costs more than reading the clock.
+ *
+ * Not thread safe, each thread owns its own timer. Other threads should only
+ * read a timer after a barrier with the owner.
+ *
+ * @author pendgaft
+ *
+ */
+public class PhaseTimer {
+
+	public static final int ADVANCE = 0;
+	public static final int SCAN_QUEUE = 1;
+	public static final int EVENT_UPDATE = 2;
+	public static final int PROCESS_UPDATE = 3;
+
+	/**
+	 * The driver's own serial work, polling the event queue, handling the
+	 * event, checking if the sim is done
+	 */
+	public static final int DRIVER = 4;
+
+	/**
+	 * Time a worker spends blocked waiting for the driver to release it
+	 */
+	public static final int WAIT = 5;
+
+	public static final int WORKER_PHASE_COUNT = 4;
+	public static final String[] PHASE_NAMES = { "advance", "scanQueue", "eventUpdate", "processUpdate", "driver",
+			"wait" };
+
+	private final boolean enabled;
+	private long[] nanos;
+
+	private final com.sun.management.ThreadMXBean allocBean;
+	private long[] allocBytes;
+	private long allocMark;
+
+	/**
+	 * Builds a timer.
+	 *
+	 * @param enabled
+	 *            - if false the timer never reads the clock and stays at zero
+	 * @param countAllocations
+	 *            - if true the bytes allocated by the owning thread are
+	 *            charged to each phase as well, ignored if the JVM can't
+	 *            count them
+	 */
+	public PhaseTimer(boolean enabled, boolean countAllocations) {
+		this.enabled = enabled;
+		this.nanos = new long[PhaseTimer.PHASE_NAMES.length];
+		this.allocBytes = new long[PhaseTimer.PHASE_NAMES.length];
+		this.allocMark = 0;
+		if (countAllocations && PhaseTimer.allocationCountingSupported()) {
+			this.allocBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		} else {
+			this.allocBean = null;
+		}
+	}
+
+	/**
+	 * Predicate to test if this JVM can count the bytes each thread
+	 * allocates, turning the counting on if it is off.
+	 *
+	 * @return - true if PhaseTimers can count allocations
+	 */
+	public static boolean allocationCountingSupported() {
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+			return false;
+		}
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		if (!threadBean.isThreadAllocatedMemorySupported()) {
+			return false;
+		}
+		if (!threadBean.isThreadAllocatedMemoryEnabled()) {
+			threadBean.setThreadAllocatedMemoryEnabled(true);
+		}
+		return true;
+	}
+
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	public boolean isCountingAllocations() {
+		return this.allocBean != null;
+	}
+
+	/**
+	 * Marks the start of the first interval.
+	 *
+	 * @return - the start time to hand to lap
+	 */
+	public long start() {
+		if (this.allocBean != null) {
+			this.allocMark = this.allocBean.getCurrentThreadAllocatedBytes();
+		}
+		if (!this.enabled) {
+			return 0L;
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * Charges the time since a mark to a phase and starts the next interval.
+	 *
+	 * @param phase
+	 *            - the phase the interval belonged to
+	 * @param since
+	 *            - the start of the interval, from start or the last lap
+	 * @return - the start of the next interval
+	 */
+	public long lap(int phase, long since) {
+		if (this.allocBean != null) {
+			long allocNow = this.allocBean.getCurrentThreadAllocatedBytes();
+			this.allocBytes[phase] += allocNow - this.allocMark;
+			this.allocMark = allocNow;
+		}
+		if (!this.enabled) {
+			return 0L;
+		}
+		long now = System.nanoTime();
+		this.nanos[phase] += now - since;
+		return now;
+	}
+
+	/**
+	 * Fetches the time charged to a phase so far.
+	 *
+	 * @param phase
+	 *            - the phase in question
+	 * @return - total time in ms
+	 */
+	public double getMillis(int phase) {
+		return (double) this.nanos[phase] / 1000000.0;
+	}
+
+	/**
+	 * Fetches the bytes the owning thread allocated in a phase so far.
+	 *
+	 * @param phase
+	 *            - the phase in question
+	 * @return - total bytes allocated, 0 unless counting allocations
+	 */
+	public long getAllocatedBytes(int phase) {
+		return this.allocBytes[phase];
+	}
+}
@@ -0,0 +1,161 @@
+package threading;
+
+import java.lang.management.*;
+import java.util.*;
+
+import javax.management.*;
+
+import router.BGPSpeaker;
+
+/**
+ * Optional JMX surface for watching long runs (jconsole, VisualVM, or any JMX
+ * client attached to the sim's JVM). The driver publishes an immutable
+ * snapshot every PUBLISH_WINDOW of wall time, while the workers are parked,
+ * so JMX reads never touch live simulation state.
+ *
+ * @author pendgaft
+ *
+ */
+public class SimMonitor implements SimMonitorMBean {
+
+	public static final String OBJECT_NAME = "thunderwolf:type=SimMonitor";
+
+	/**
+	 * Wall time between snapshots, in ms
+	 */
+	public static final long PUBLISH_WINDOW = 1000;
+
+	/**
+	 * The phases the driver times, the workers' wait slot is left off
+	 */
+	private static final int DRIVER_PHASE_COUNT = PhaseTimer.DRIVER + 1;
+
+	private volatile Snapshot current;
+	private MemoryMXBean memoryBean;
+
+	/**
+	 * One published view of the simulation.
+	 */
+	private static class Snapshot {
+		private long publishedAt;
+		private long wallTime;
+		private double simTime;
+		private long events;
+		private double eventRate;
+		private double simRate;
+		private int activeRouters;
+		private long queuedUpdates;
+		private double[] phaseMillis;
+	}
+
+	public SimMonitor() {
+		this.memoryBean = ManagementFactory.getMemoryMXBean();
+		this.current = new Snapshot();
+		this.current.publishedAt = System.currentTimeMillis();
+		this.current.phaseMillis = new double[SimMonitor.DRIVER_PHASE_COUNT];
+	}
+
+	/**
+	 * Registers the monitor with the platform MBean server under OBJECT_NAME.
+	 * 
+	 * @throws JMException
+	 *             - if the registration fails
+	 */
+	public void register() throws JMException {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(SimMonitor.OBJECT_NAME));
+	}
+
+	/**
+	 * Publishes a fresh snapshot, this walks the routers so must only be
+	 * called by the driver while the workers are blocked.
+	 * 
+	 * @param wallTime
+	 *            - wall time since the simulation started, in ms
+	 * @param simTime
+	 *            - the simulated time advanced to, in ms
+	 * @param events
+	 *            - events handled so far
+	 * @param routers
+	 *            - every router in the simulation
+	 * @param driverTimer
+	 *            - the driver's phase timer
+	 */
+	public void publish(long wallTime, double simTime, long events, Collection<BGPSpeaker> routers,
+			PhaseTimer driverTimer) {
+		Snapshot last = this.current;
+		Snapshot next = new Snapshot();
+		next.publishedAt = System.currentTimeMillis();
+		next.wallTime = wallTime;
+		next.simTime = simTime;
+		next.events = events;
+
+		double windowSeconds = (double) (wallTime - last.wallTime) / 1000.0;
+		if (windowSeconds > 0.0) {
+			next.eventRate = (double) (events - last.events) / windowSeconds;
+			next.simRate = (simTime - last.simTime) / 1000.0 / windowSeconds;
+		}
+
+		for (BGPSpeaker tRouter : routers) {
+			long queued = tRouter.getWorkRemaining();
+			if (queued > 0) {
+				next.activeRouters++;
+				next.queuedUpdates += queued;
+			}
+		}
+
+		next.phaseMillis = new double[SimMonitor.DRIVER_PHASE_COUNT];
+		for (int phase = 0; phase < next.phaseMillis.length; phase++) {
+			next.phaseMillis[phase] = driverTimer.getMillis(phase);
+		}
+
+		this.current = next;
+	}
+
+	public double getSimTimeSeconds() {
+		return this.current.simTime / 1000.0;
+	}
+
+	public long getWallTimeMillis() {
+		return this.current.wallTime;
+	}
+
+	public long getSnapshotAgeMillis() {
+		return System.currentTimeMillis() - this.current.publishedAt;
+	}
+
+	public long getEventsProcessed() {
+		return this.current.events;
+	}
+
+	public double getEventsPerSecond() {
+		return this.current.eventRate;
+	}
+
+	public double getSimRate() {
+		return this.current.simRate;
+	}
+
+	public int getActiveRouters() {
+		return this.current.activeRouters;
+	}
+
+	public long getQueuedUpdates() {
+		return this.current.queuedUpdates;
+	}
+
+	public long getHeapUsedBytes() {
+		return this.memoryBean.getHeapMemoryUsage().getUsed();
+	}
+
+	public long getHeapMaxBytes() {
+		return this.memoryBean.getHeapMemoryUsage().getMax();
+	}
+
+	public String[] getPhaseNames() {
+		return Arrays.copyOf(PhaseTimer.PHASE_NAMES, SimMonitor.DRIVER_PHASE_COUNT);
+	}
+
+	public double[] getPhaseMillis() {
+		return this.current.phaseMillis.clone();
+	}
+}
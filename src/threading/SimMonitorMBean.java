@@ -0,0 +1,68 @@
+package threading;
+
+/**
+ * JMX view of a running simulation, see SimMonitor. Values are a snapshot the
+ * driver publishes about once a second of wall time, except for the heap
+ * figures which are read live.
+ *
+ * @author pendgaft
+ *
+ */
+public interface SimMonitorMBean {
+
+	/**
+	 * @return - the simulated time the driver has advanced to, in seconds
+	 */
+	public double getSimTimeSeconds();
+
+	/**
+	 * @return - wall time since the simulation started, in ms
+	 */
+	public long getWallTimeMillis();
+
+	/**
+	 * @return - wall time since the driver last published, in ms, if this
+	 *         keeps growing the driver is stuck in a round
+	 */
+	public long getSnapshotAgeMillis();
+
+	/**
+	 * @return - events the driver has handled since the start
+	 */
+	public long getEventsProcessed();
+
+	/**
+	 * @return - events handled per wall second over the last publish window
+	 */
+	public double getEventsPerSecond();
+
+	/**
+	 * @return - simulated seconds per wall second over the last publish window
+	 */
+	public double getSimRate();
+
+	/**
+	 * @return - routers that still have updates queued
+	 */
+	public int getActiveRouters();
+
+	/**
+	 * @return - updates queued across all routers
+	 */
+	public long getQueuedUpdates();
+
+	public long getHeapUsedBytes();
+
+	public long getHeapMaxBytes();
+
+	/**
+	 * @return - the names for the entries of getPhaseMillis
+	 */
+	public String[] getPhaseNames();
+
+	/**
+	 * @return - driver wall time spent in each phase so far, in ms, all zero
+	 *         unless phase timing is on
+	 */
+	public double[] getPhaseMillis();
+}
@@ -2,8 +2,10 @@ package threading;
 
 import java.util.*;
 
+import logging.ConsoleStats;
+import logging.SimLogger;
 import router.BGPSpeaker;
-import events.ProcessEvent;
+import router.SpeakerCounters;
 
 public class ThreadWorker implements Runnable {
 
@@ -12,11 +14,25 @@ public class ThreadWorker implements Runnable {
 	private double lastTimeAdvance;
 	private Set<BGPSpeaker> ownedNodes;
 
+	/*
+	 * Our routers and their slots in the logger's stat arrays, built the first
+	 * time we gather stats
+	 */
+	private BGPSpeaker[] statRouters;
+	private int[] statSlots;
+	private ConsoleStats consoleStats;
+
+	private PhaseTimer timer;
+
 	public ThreadWorker(FlowDriver daBoss, int id) {
 		this.workSource = daBoss;
 		this.myID = id;
 		this.lastTimeAdvance = 0.0;
 		this.ownedNodes = new HashSet<BGPSpeaker>();
+		this.statRouters = null;
+		this.statSlots = null;
+		this.consoleStats = new ConsoleStats();
+		this.timer = new PhaseTimer(FlowDriver.PHASE_TIMING, FlowDriver.JVM_STATS);
 	}
 
 	public void giveChild(BGPSpeaker ownedNode) {
@@ -26,6 +42,7 @@ public class ThreadWorker implements Runnable {
 	@Override
 	public void run() {
 		try {
+			long mark = this.timer.start();
 			while (true) {
 
 				/*
@@ -33,35 +50,53 @@ public class ThreadWorker implements Runnable {
 				 * nodes...
 				 */
 				double nextTimePoint = this.workSource.getNextTimeAdvnace();
+				mark = this.timer.lap(PhaseTimer.WAIT, mark);
 				for (BGPSpeaker tChild : this.ownedNodes) {
+					long costStart = tChild.costClock();
 					tChild.queueAdvance(this.lastTimeAdvance, nextTimePoint);
+					tChild.chargeCost(SpeakerCounters.ADVANCE, costStart);
 				}
 
 				/*
 				 * Update where we advanced to, phone home to say we're done
 				 */
 				this.lastTimeAdvance = nextTimePoint;
+				mark = this.timer.lap(PhaseTimer.ADVANCE, mark);
 				this.workSource.reportWorkDone();
 				
 				this.workSource.waitForScanQueues();
+				mark = this.timer.lap(PhaseTimer.WAIT, mark);
 				for(BGPSpeaker tChild: this.ownedNodes){
+					long costStart = tChild.costClock();
 					tChild.handleIncomingQueueCleanup();
+					tChild.chargeCost(SpeakerCounters.CLEANUP, costStart);
 				}
+				mark = this.timer.lap(PhaseTimer.SCAN_QUEUE, mark);
 				this.workSource.reportWorkDone();
 
 				this.workSource.waitForEventAdjust();
+				mark = this.timer.lap(PhaseTimer.WAIT, mark);
+				if (this.workSource.isStatGatherRound()) {
+					this.gatherStats();
+				}
 				for (BGPSpeaker tChild : this.ownedNodes) {
+					long costStart = tChild.costClock();
 					tChild.updateEstimatedCompletionTimes();
+					tChild.chargeCost(SpeakerCounters.ESTIMATE, costStart);
 				}
+				mark = this.timer.lap(PhaseTimer.EVENT_UPDATE, mark);
 				this.workSource.reportWorkDone();
 
 				this.workSource.waitForProcessEventUpdate();
+				mark = this.timer.lap(PhaseTimer.WAIT, mark);
 				for (BGPSpeaker tChild : this.ownedNodes) {
-					ProcessEvent evictEvent = tChild.checkIfProcessingEventNeedsUpdating(this.lastTimeAdvance);
-					if (evictEvent != null) {
-						this.workSource.replaceProcessEvent(evictEvent, tChild.getNextProcessEvent());
+					long costStart = tChild.costClock();
+					if (tChild.checkIfProcessingEventNeedsUpdating(this.lastTimeAdvance)) {
+						this.workSource.rescheduleProcessEvent(tChild.getNextProcessEvent(), tChild.getNextProcessTime());
 					}
+					tChild.chargeCost(SpeakerCounters.RESCHEDULE, costStart);
 				}
+				mark = this.timer.lap(PhaseTimer.PROCESS_UPDATE, mark);
 				this.workSource.reportWorkDone();
 			}
 		} catch (InterruptedException e) {
@@ -70,4 +105,41 @@ public class ThreadWorker implements Runnable {
 
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Fetches this worker's phase timer, only safe to read while the worker is
+	 * blocked waiting on the driver.
+	 * 
+	 * @return - the timer
+	 */
+	public PhaseTimer getTimer() {
+		return this.timer;
+	}
+
+	/**
+	 * Fetches the console stats of our routers from the last stat gather, only
+	 * safe to read while the worker is blocked waiting on the driver.
+	 * 
+	 * @return - the console stats
+	 */
+	public ConsoleStats getConsoleStats() {
+		return this.consoleStats;
+	}
+
+	public int getID() {
+		return this.myID;
+	}
+
+	/**
+	 * Fills in our routers' slots of the logger's stat arrays for this epoch,
+	 * and our console stats, which the driver merges once we're done.
+	 */
+	private void gatherStats() {
+		SimLogger logger = this.workSource.getLogger();
+		if (this.statRouters == null) {
+			this.statRouters = this.ownedNodes.toArray(new BGPSpeaker[this.ownedNodes.size()]);
+			this.statSlots = logger.getSlots(Arrays.asList(this.statRouters));
+		}
+		this.consoleStats.reset();
+		logger.gatherStats(this.statRouters, this.statSlots, this.consoleStats);
+	}
+}
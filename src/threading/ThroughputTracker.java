@@ -0,0 +1,180 @@
+package threading;
+
+import events.SimEvent;
+
+/**
+ * Tracks how fast the driver is getting through events, by event type, how
+ * fast simulated time is moving relative to wall time and how many events
+ * are live in the queue. The driver counts every event it handles and takes
+ * a sample once every SAMPLE_INTERVAL of wall time, the samples are kept in a
+ * ring so rates can be reported over sliding windows as well as the whole
+ * run.
+ *
+ * Only the driver thread touches this.
+ *
+ * @author pendgaft
+ *
+ */
+public class ThroughputTracker {
+
+	/**
+	 * Wall time between samples, in ms
+	 */
+	public static final long SAMPLE_INTERVAL = 1000;
+
+	/**
+	 * Sliding windows reported, in samples (so seconds)
+	 */
+	private static final int[] WINDOWS = { 60, 600 };
+	private static final int RING_SIZE = 601;
+
+	private static final int[] EVENT_TYPES = { SimEvent.ROUTER_PROCESS, SimEvent.MRAI_EVENT, SimEvent.LOGGING_EVENT };
+	private static final String[] EVENT_NAMES = { "process", "mrai", "logging" };
+
+	private long[] eventCounts;
+	private long runStart;
+	private long liveTotal;
+	private int liveMax;
+	private long liveSamples;
+
+	private long[] sampleWall;
+	private double[] sampleSim;
+	private long[][] sampleCounts;
+	private int[] sampleLive;
+	private int ringHead;
+	private int ringCount;
+
+	/**
+	 * Builds a tracker, the start of the run is taken as the first sample.
+	 * 
+	 * @param startTime
+	 *            - the wall time the run started at, in ms
+	 * @param liveEvents
+	 *            - the number of live events at the start
+	 */
+	public ThroughputTracker(long startTime, int liveEvents) {
+		this.eventCounts = new long[SimEvent.LOGGING_EVENT + 1];
+		this.runStart = startTime;
+		this.liveTotal = 0;
+		this.liveMax = 0;
+		this.liveSamples = 0;
+		this.sampleWall = new long[ThroughputTracker.RING_SIZE];
+		this.sampleSim = new double[ThroughputTracker.RING_SIZE];
+		this.sampleCounts = new long[ThroughputTracker.RING_SIZE][];
+		this.sampleLive = new int[ThroughputTracker.RING_SIZE];
+		this.ringHead = 0;
+		this.ringCount = 0;
+		this.sample(startTime, 0.0, liveEvents);
+	}
+
+	/**
+	 * Counts one handled event.
+	 * 
+	 * @param eventType
+	 *            - the SimEvent type of the event
+	 */
+	public void countEvent(int eventType) {
+		this.eventCounts[eventType]++;
+	}
+
+	/**
+	 * Records a sample, the oldest is dropped once the ring is full.
+	 * 
+	 * @param wallTime
+	 *            - the current wall time, in ms
+	 * @param simTime
+	 *            - the simulated time advanced to, in ms
+	 * @param liveEvents
+	 *            - the number of live events in the queue
+	 */
+	public void sample(long wallTime, double simTime, int liveEvents) {
+		this.ringHead = (this.ringHead + 1) % ThroughputTracker.RING_SIZE;
+		this.sampleWall[this.ringHead] = wallTime;
+		this.sampleSim[this.ringHead] = simTime;
+		this.sampleCounts[this.ringHead] = this.eventCounts.clone();
+		this.sampleLive[this.ringHead] = liveEvents;
+		this.ringCount = Math.min(this.ringCount + 1, ThroughputTracker.RING_SIZE);
+
+		this.liveTotal += liveEvents;
+		this.liveMax = Math.max(this.liveMax, liveEvents);
+		this.liveSamples++;
+	}
+
+	/**
+	 * Builds the report, one line per sliding window that has filled up, then
+	 * one for the run so far. Windows end at the latest sample.
+	 * 
+	 * @return - the report
+	 */
+	public String buildReport() {
+		StringBuilder strBuild = new StringBuilder();
+		strBuild.append("Throughput (events per wall second, sim seconds per wall second, live events):\n");
+		for (int tWindow : ThroughputTracker.WINDOWS) {
+			if (tWindow < this.ringCount) {
+				this.appendWindow(strBuild, "last " + tWindow + "s", tWindow);
+			}
+		}
+		this.appendWindow(strBuild, "whole run", -1);
+		return strBuild.toString();
+	}
+
+	/**
+	 * Appends one line of the report.
+	 * 
+	 * @param strBuild
+	 *            - where to put it
+	 * @param label
+	 *            - the name of the window
+	 * @param window
+	 *            - the number of samples back the window starts, -1 for the
+	 *            start of the run
+	 */
+	private void appendWindow(StringBuilder strBuild, String label, int window) {
+		long[] endCounts = this.sampleCounts[this.ringHead];
+		long endWall = this.sampleWall[this.ringHead];
+		double endSim = this.sampleSim[this.ringHead];
+
+		long[] startCounts;
+		long startWall;
+		double startSim;
+		int windowLiveMax = 0;
+		long windowLiveTotal = 0;
+		long windowLiveSamples = 0;
+		if (window < 0) {
+			startCounts = new long[endCounts.length];
+			startWall = this.runStart;
+			startSim = 0.0;
+			windowLiveMax = this.liveMax;
+			windowLiveTotal = this.liveTotal;
+			windowLiveSamples = this.liveSamples;
+		} else {
+			int startSlot = this.slotBack(window);
+			startCounts = this.sampleCounts[startSlot];
+			startWall = this.sampleWall[startSlot];
+			startSim = this.sampleSim[startSlot];
+			for (int counter = 0; counter < window; counter++) {
+				int tLive = this.sampleLive[this.slotBack(counter)];
+				windowLiveMax = Math.max(windowLiveMax, tLive);
+				windowLiveTotal += tLive;
+				windowLiveSamples++;
+			}
+		}
+
+		double seconds = Math.max((double) (endWall - startWall) / 1000.0, 0.001);
+		long total = 0;
+		strBuild.append(String.format("  %-10s", label));
+		for (int counter = 0; counter < ThroughputTracker.EVENT_TYPES.length; counter++) {
+			long tCount = endCounts[ThroughputTracker.EVENT_TYPES[counter]]
+					- startCounts[ThroughputTracker.EVENT_TYPES[counter]];
+			total += tCount;
+			strBuild.append(String.format(" %s %10.1f", ThroughputTracker.EVENT_NAMES[counter], tCount / seconds));
+		}
+		strBuild.append(String.format(" total %10.1f  sim rate %8.3f  live events avg %.1f max %d\n", total
+				/ seconds, (endSim - startSim) / 1000.0 / seconds, (double) windowLiveTotal
+				/ Math.max(1, windowLiveSamples), windowLiveMax));
+	}
+
+	private int slotBack(int samplesBack) {
+		return (this.ringHead - samplesBack + ThroughputTracker.RING_SIZE) % ThroughputTracker.RING_SIZE;
+	}
+}
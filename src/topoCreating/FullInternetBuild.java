@@ -13,6 +13,7 @@ public class FullInternetBuild {
 	//private static final String BASE_IP_FILE = "/scratch/waterhouse/schuch/asData/current-ip-count";
 	private static final String BASE_IP_FILE = "20150101-ip.txt";
 	private static final String OUT_FILE = "pruned-weighted-internet";
+	private static final int PRUNE_LEVELS = 2;
 
 	/**
 	 * @param args
@@ -20,21 +21,27 @@ public class FullInternetBuild {
 	public static void main(String[] args) throws IOException {
 	
 		ASTopoParser topParse = new ASTopoParser(FullInternetBuild.BASE_AS_REL_FILE, FullInternetBuild.BASE_IP_FILE, false);
-		HashMap<Integer, BGPSpeaker> startingMap = topParse.doNetworkBuild(2);
+		TopoPruner pruner = topParse.doPruneLevels();
 		System.out.println("original parse: " + topParse.getUnpruned().size());
-		System.out.println("pruned size: " + startingMap.keySet().size());
 
-		HashMap<Integer, AS> asMap = new HashMap<Integer, AS>();
-		for(int tASN: startingMap.keySet()){
-			asMap.put(tASN, startingMap.get(tASN).getASObject());
+		/*
+		 * One pruning pass gives us every level, dump them all, the deepest
+		 * level keeps the historical file name
+		 */
+		for (int level = 1; level <= FullInternetBuild.PRUNE_LEVELS; level++) {
+			HashMap<Integer, AS> asMap = pruner.materialize(level);
+			System.out.println("pruned size at level " + level + ": " + asMap.size());
+
+			String outBase = FullInternetBuild.OUT_FILE;
+			if (level < FullInternetBuild.PRUNE_LEVELS) {
+				outBase += "-level" + level;
+			}
+			FullInternetBuild.dumpToFile(asMap, outBase);
 		}
-		//HashMap<Integer, AS> prunedMap = FullInternetBuild.pruneTopo(asMap);
-		//HashMap<Integer, AS> secondPruneMap = FullInternetBuild.pruneTopo(prunedMap);
-		FullInternetBuild.dumpToFile(asMap);
 	}
 
-	private static void dumpToFile(HashMap<Integer, AS> asMap) throws IOException {
-		BufferedWriter outFile = new BufferedWriter(new FileWriter(FullInternetBuild.OUT_FILE + "-rel.txt"));
+	private static void dumpToFile(HashMap<Integer, AS> asMap, String outBase) throws IOException {
+		BufferedWriter outFile = new BufferedWriter(new FileWriter(outBase + "-rel.txt"));
 
 		long count = 0;
 		for (AS tAS : asMap.values()) {
@@ -50,7 +57,7 @@ public class FullInternetBuild {
 		outFile.close();
 		System.out.println("line count: " + count);
 
-		outFile = new BufferedWriter(new FileWriter(FullInternetBuild.OUT_FILE + "-ip.txt"));
+		outFile = new BufferedWriter(new FileWriter(outBase + "-ip.txt"));
 		for (AS tAS : asMap.values()) {
 			outFile.write("" + tAS.getASN() + " " + tAS.getCIDRSize() + "\n");
 		}
@@ -0,0 +1,176 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Streaming histogram of non-negative longs with log-linear buckets (the same
+ * idea as HdrHistogram). Every power of two range is split into SUB_BUCKETS
+ * equal buckets, so quantiles come back within about 3% of the true value
+ * while recording is a couple of shifts and an array increment, nothing is
+ * boxed or sorted. Histograms over different sets of values can be merged,
+ * which lets each worker build its own and the results be combined at
+ * report time.
+ *
+ * Not thread safe, give each thread its own and merge.
+ *
+ * @author pendgaft
+ *
+ */
+public class LogHistogram {
+
+	/**
+	 * log2 of the number of buckets per power of two, values below
+	 * SUB_BUCKETS are recorded exactly
+	 */
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << LogHistogram.SUB_BUCKET_BITS;
+	private static final int BUCKET_COUNT = (64 - LogHistogram.SUB_BUCKET_BITS) * LogHistogram.SUB_BUCKETS;
+
+	private long[] counts;
+	private long totalCount;
+	private double sum;
+	private long minValue;
+	private long maxValue;
+
+	public LogHistogram() {
+		this.counts = new long[LogHistogram.BUCKET_COUNT];
+		this.reset();
+	}
+
+	/**
+	 * Records one value.
+	 *
+	 * @param value
+	 *            - the value, must not be negative
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Histogram values must not be negative: " + value);
+		}
+
+		this.counts[LogHistogram.bucketOf(value)]++;
+		this.totalCount++;
+		this.sum += value;
+		if (value < this.minValue) {
+			this.minValue = value;
+		}
+		if (value > this.maxValue) {
+			this.maxValue = value;
+		}
+	}
+
+	/**
+	 * Folds another histogram's values into this one.
+	 *
+	 * @param other
+	 *            - the histogram to add in, this is not modified
+	 */
+	public void merge(LogHistogram other) {
+		for (int counter = 0; counter < LogHistogram.BUCKET_COUNT; counter++) {
+			this.counts[counter] += other.counts[counter];
+		}
+		this.totalCount += other.totalCount;
+		this.sum += other.sum;
+		this.minValue = Math.min(this.minValue, other.minValue);
+		this.maxValue = Math.max(this.maxValue, other.maxValue);
+	}
+
+	/**
+	 * Empties the histogram so it can be reused.
+	 */
+	public void reset() {
+		Arrays.fill(this.counts, 0L);
+		this.totalCount = 0;
+		this.sum = 0.0;
+		this.minValue = Long.MAX_VALUE;
+		this.maxValue = 0;
+	}
+
+	public long getCount() {
+		return this.totalCount;
+	}
+
+	/**
+	 * Fetches the exact mean of the recorded values.
+	 *
+	 * @return - the mean, 0 if nothing was recorded
+	 */
+	public double getMean() {
+		if (this.totalCount == 0) {
+			return 0.0;
+		}
+		return this.sum / (double) this.totalCount;
+	}
+
+	/**
+	 * Fetches the exact smallest recorded value.
+	 *
+	 * @return - the min, 0 if nothing was recorded
+	 */
+	public long getMin() {
+		if (this.totalCount == 0) {
+			return 0;
+		}
+		return this.minValue;
+	}
+
+	/**
+	 * Fetches the exact largest recorded value.
+	 *
+	 * @return - the max, 0 if nothing was recorded
+	 */
+	public long getMax() {
+		return this.maxValue;
+	}
+
+	/**
+	 * Fetches the value at a quantile, the top of the bucket that the
+	 * quantile falls in (never more than the max recorded).
+	 *
+	 * @param quantile
+	 *            - the quantile wanted, 0.0 to 1.0, i.e. 0.99 for p99
+	 * @return - the value at or below which that fraction of the values fall,
+	 *         0 if nothing was recorded
+	 */
+	public long getValueAtQuantile(double quantile) {
+		if (this.totalCount == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(quantile * this.totalCount);
+		rank = Math.max(1, Math.min(rank, this.totalCount));
+		long seen = 0;
+		for (int counter = 0; counter < LogHistogram.BUCKET_COUNT; counter++) {
+			seen += this.counts[counter];
+			if (seen >= rank) {
+				return Math.max(this.getMin(), Math.min(LogHistogram.bucketTop(counter), this.maxValue));
+			}
+		}
+		return this.maxValue;
+	}
+
+	/**
+	 * Maps a value to its bucket, values under SUB_BUCKETS get their own
+	 * bucket, above that each power of two range gets SUB_BUCKETS buckets.
+	 */
+	private static int bucketOf(long value) {
+		if (value < LogHistogram.SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - LogHistogram.SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) - LogHistogram.SUB_BUCKETS;
+		return (shift + 1) * LogHistogram.SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * The largest value that lands in a bucket.
+	 */
+	private static long bucketTop(int bucket) {
+		if (bucket < LogHistogram.SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / LogHistogram.SUB_BUCKETS - 1;
+		long subBucket = bucket % LogHistogram.SUB_BUCKETS + LogHistogram.SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,111 @@
+package util;
+
+import java.util.*;
+
+/**
+ * Small helper for splitting a batch of independent work items over a handful
+ * of plain threads. Used for the setup phases (router construction, queue
+ * wiring, seeding) where every item touches only its own state, the sim proper
+ * has its own ThreadWorkers. The calling thread works the first slice itself
+ * and blocks until every slice is done, so one call is one barrier.
+ *
+ * @author pendgaft
+ *
+ */
+public class ParallelWork {
+
+	/**
+	 * Batches smaller than this per thread are not worth a thread
+	 */
+	private static final int MIN_ITEMS_PER_THREAD = 256;
+
+	/**
+	 * One unit of work, run once per item.
+	 */
+	public interface ItemTask<T> {
+		public void process(T item);
+	}
+
+	/**
+	 * Runs the task on every item of the list, in parallel if the list is big
+	 * enough to be worth it. The task must only touch state owned by its item
+	 * (reads of state nobody is writing are fine).
+	 *
+	 * @param items
+	 *            - the items to process, should be random access, this is not
+	 *            modified
+	 * @param task
+	 *            - the work to do for each item
+	 * @param name
+	 *            - name for the helper threads
+	 */
+	public static <T> void forEach(List<T> items, ItemTask<T> task, String name) {
+		int numberOfThreads = Math.min(Runtime.getRuntime().availableProcessors(),
+				Math.max(1, items.size() / ParallelWork.MIN_ITEMS_PER_THREAD));
+
+		List<Slice<T>> slices = ParallelWork.buildSlices(items, task, numberOfThreads);
+		Thread[] helpers = new Thread[numberOfThreads];
+		for (int counter = 1; counter < numberOfThreads; counter++) {
+			helpers[counter] = new Thread(slices.get(counter));
+			helpers[counter].setName(name + " " + counter);
+			helpers[counter].start();
+		}
+		slices.get(0).run();
+		for (int counter = 1; counter < numberOfThreads; counter++) {
+			try {
+				helpers[counter].join();
+			} catch (InterruptedException e) {
+				throw new RuntimeException("Interrupted waiting on " + name, e);
+			}
+		}
+
+		/*
+		 * Surface the first failure on the calling thread
+		 */
+		for (Slice<T> tSlice : slices) {
+			if (tSlice.failure != null) {
+				throw new RuntimeException("Failure in " + name, tSlice.failure);
+			}
+		}
+	}
+
+	private static <T> List<Slice<T>> buildSlices(List<T> items, ItemTask<T> task, int numberOfThreads) {
+		List<Slice<T>> slices = new ArrayList<Slice<T>>(numberOfThreads);
+		for (int counter = 0; counter < numberOfThreads; counter++) {
+			int start = (int) ((long) items.size() * counter / numberOfThreads);
+			int end = (int) ((long) items.size() * (counter + 1) / numberOfThreads);
+			slices.add(new Slice<T>(items, task, start, end));
+		}
+		return slices;
+	}
+
+	/**
+	 * A contiguous run of the item list worked by one thread.
+	 */
+	private static class Slice<T> implements Runnable {
+
+		private List<T> items;
+		private ItemTask<T> task;
+		private int start;
+		private int end;
+		private Throwable failure;
+
+		private Slice(List<T> items, ItemTask<T> task, int start, int end) {
+			this.items = items;
+			this.task = task;
+			this.start = start;
+			this.end = end;
+			this.failure = null;
+		}
+
+		public void run() {
+			try {
+				for (int counter = this.start; counter < this.end; counter++) {
+					this.task.process(this.items.get(counter));
+				}
+			} catch (Throwable e) {
+				this.failure = e;
+			}
+		}
+	}
+}